@@ -0,0 +1,354 @@
+package com.andrew;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+
+/**
+ * This class is one alert rule from the rules file, for example
+ * "BATT is in violation when its raw value is below the red low limit, and 3 violations in 300 seconds raise an alert".
+ *
+ * A rule can have hysteresis, so a reading that hovers around the limit doesn't flip in and out of violation
+ * on every sample. With an enter margin, a reading has to be that far past the limit to start violating; with an
+ * exit margin, a (satellite, rule) that is violating keeps violating until a reading is that far back on the
+ * good side of the limit. Readings in between (see {@link #HOLD}) count as violations only while the key is
+ * already violating, which is one bit of state per key.
+ *
+ * A TREND rule doesn't compare a reading with the limit, but where the readings are heading: a reading is a
+ * violation when the least-squares line through the key's readings in the window, carried on for the rule's lead
+ * time, ends up past the limit (see {@link TrendTable}). Its violations go through the same count-in-window check.
+ *
+ * An ANOMALY rule doesn't need a limit at all: it learns what the key's readings usually are, and a reading is a
+ * violation when it's more than the rule's number of standard deviations away from that baseline in the rule's
+ * direction (see {@link AnomalyTable}). That catches a sensor drifting off while it's still well inside its limits.
+ * Its violations go through the same count-in-window check too, so a single glitch doesn't raise an alert.
+ *
+ * A SEQUENCE rule looks for a pattern in the readings of a (satellite, component), a list of {@link Band}s such as
+ * "YELLOW_HIGH, then RED_HIGH within 2 minutes, with no recovery in between" (see {@link SequenceTable}). The reading
+ * that completes the pattern is a violation, and goes through the same count-in-window check.
+ *
+ * Any rule can also name pairs of satellites that fly in tandem. When both satellites of a pair are in an episode
+ * of the rule at the same time, a TANDEM alert with both their ids goes out as well (see {@link EpisodeTable}).
+ *
+ * A COMPOUND rule doesn't look at readings itself. It names two or more components, and when every one of them is
+ * in an episode of one of its red LIMIT rules on the same satellite at the same time, a CRITICAL alert goes out, once
+ * for as long as that lasts.
+ *
+ * The fields are filled in by Jackson from the rules file, and {@link RuleTable} fills in the rest
+ * (the rule's id and its component code) when it compiles the rules.
+ */
+final class AlertRule {
+
+    /**
+     * Which of the four limits in a telemetry record the raw value is compared with.
+     */
+    enum Limit {
+        RED_HIGH("RED HIGH"),
+        YELLOW_HIGH("YELLOW HIGH"),
+        YELLOW_LOW("YELLOW LOW"),
+        RED_LOW("RED LOW");
+
+        // The severity an alert gets when its rule doesn't name one, e.g. "RED LOW".
+        final String severity;
+
+        Limit(String severity) {
+            this.severity = severity;
+        }
+
+        double of(App.TelemetryRecord record) {
+            switch (this) {
+                case RED_HIGH:
+                    return record.redHighLimit;
+                case YELLOW_HIGH:
+                    return record.yellowHighLimit;
+                case YELLOW_LOW:
+                    return record.yellowLowLimit;
+                default:
+                    return record.redLowLimit;
+            }
+        }
+
+        double of(TelemetryBatch batch, int row) {
+            switch (this) {
+                case RED_HIGH:
+                    return batch.redHighLimits[row];
+                case YELLOW_HIGH:
+                    return batch.yellowHighLimits[row];
+                case YELLOW_LOW:
+                    return batch.yellowLowLimits[row];
+                default:
+                    return batch.redLowLimits[row];
+            }
+        }
+
+        /**
+         * Returns the red limit that a yellow limit warns about, when the rule looks at the same side
+         * (YELLOW_HIGH looking ABOVE warns about RED_HIGH). Returns null for red limits and other directions.
+         */
+        Limit redLimit(Direction direction) {
+            if (this == YELLOW_HIGH && direction == Direction.ABOVE) {
+                return RED_HIGH;
+            } else if (this == YELLOW_LOW && direction == Direction.BELOW) {
+                return RED_LOW;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * What a rule looks at: each reading against the limit, the trend of the readings towards it, how far
+     * each reading is from the key's usual readings, or the episodes of other rules.
+     */
+    enum Type {
+        LIMIT,
+        TREND,
+        ANOMALY,
+        SEQUENCE,
+        COMPOUND
+    }
+
+    /**
+     * Which of the bands between the four limits of its record a raw value is in. Being exactly on a limit
+     * counts as the band on the inside of it, like for the limit rules.
+     */
+    enum Band {
+        RED_HIGH("RED HIGH"),
+        YELLOW_HIGH("YELLOW HIGH"),
+        NORMAL("NORMAL"),
+        YELLOW_LOW("YELLOW LOW"),
+        RED_LOW("RED LOW");
+
+        private static final Band[] VALUES = values();
+
+        final String severity;
+
+        Band(String severity) {
+            this.severity = severity;
+        }
+
+        static Band of(double rawValue, double redHigh, double yellowHigh, double yellowLow, double redLow) {
+            if (rawValue > redHigh) {
+                return RED_HIGH;
+            } else if (rawValue > yellowHigh) {
+                return YELLOW_HIGH;
+            } else if (rawValue < redLow) {
+                return RED_LOW;
+            } else if (rawValue < yellowLow) {
+                return YELLOW_LOW;
+            }
+            return NORMAL;
+        }
+
+        static Band of(int ordinal) {
+            return VALUES[ordinal];
+        }
+    }
+
+    /**
+     * Whether a raw value above or below the limit is a violation. Being exactly on the limit never is.
+     */
+    enum Direction {
+        ABOVE,
+        BELOW
+    }
+
+    // What a reading means for a rule, see classify.
+    // Not a violation, and nothing changes.
+    static final byte NONE = 0;
+    // Back past the exit margin: not a violation, and the key stops violating.
+    static final byte CLEAR = 1;
+    // Between the exit and enter margins: a violation only if the key is already violating.
+    static final byte HOLD = 2;
+    // Past the enter margin: a violation, and the key is violating from now on.
+    static final byte ENTER = 3;
+    // For TREND, ANOMALY and SEQUENCE rules, every reading: whether it's a violation depends on the readings before it.
+    static final byte SAMPLE = 4;
+
+    private static final int[] NO_PAIRS = new int[0];
+
+    // These come from the rules file.
+    @JsonProperty
+    Type type = Type.LIMIT;
+    @JsonProperty
+    String component;
+    @JsonProperty
+    Limit limit;
+    @JsonProperty
+    Direction direction;
+    @JsonProperty
+    int count = 3;
+    @JsonProperty
+    long windowSeconds = 300;
+    // Optional, the limit's own name ("RED LOW", ...) is used when it's missing.
+    @JsonProperty
+    String severity;
+    // Optional, how long after an alert goes out new alerts of the same satellite and rule are held back.
+    @JsonProperty
+    long cooldownSeconds;
+    // Optional hysteresis, in the same units as the raw value. How far past the limit a reading has to be to start
+    // violating, and how far back on the good side of the limit it has to be to stop.
+    @JsonProperty
+    double enterMargin;
+    @JsonProperty
+    double exitMargin;
+    // For TREND rules, how far ahead the trend is carried on to see if it crosses the limit.
+    @JsonProperty
+    long leadSeconds;
+    // For ANOMALY rules, how many standard deviations from the baseline a reading has to be to be a violation,
+    // and how fast the baseline follows the readings (see AnomalyTable).
+    @JsonProperty
+    double sigmas = 3;
+    @JsonProperty
+    long baselineSeconds = 600;
+    // Optional, pairs of satellite ids that fly in tandem, e.g. [[1000, 1001]].
+    @JsonProperty
+    int[][] pairs;
+    // For SEQUENCE rules, the bands the readings have to go through, in order, and how long that can take at most.
+    @JsonProperty
+    Band[] sequence;
+    @JsonProperty
+    long withinSeconds;
+    // For COMPOUND rules, the components that have to be in violation together, e.g. ["BATT", "TSTAT"].
+    @JsonProperty
+    String[] components;
+
+    // These are filled in by RuleTable.
+    int id;
+    short componentCode;
+    long windowMillis;
+    long cooldownMillis;
+    long leadMillis;
+    long baselineMillis;
+    long withinMillis;
+    // For yellow rules, the red limit on the same side, otherwise null.
+    Limit redLimit;
+    // What to add to the limit to get the enter and exit thresholds (the margins, with the direction's sign).
+    double enterOffset;
+    double exitOffset;
+    boolean hysteresis;
+    // Whether a plain limit check is all the rule does, so its violations can be read off a LimitMasks band.
+    boolean masked;
+    // The satellites in the pairs, and by their index there, the positions of their pairs in pairs.
+    LongKeyIndex pairedSatellites;
+    int[][] pairsBySatellite;
+    // For COMPOUND rules, the codes of the components, and by the same position, the red LIMIT rules of each component.
+    // Only their episodes count for the compound; a yellow one is not the emergency a CRITICAL alert stands for.
+    short[] componentCodes;
+    AlertRule[][] componentRules;
+    // Whether the rule's episodes are joined with others', for its pairs or for a COMPOUND rule of its component.
+    boolean joined;
+
+    /**
+     * Returns the positions in {@link #pairs} of the pairs the satellite is in, or an empty array if it isn't in any.
+     */
+    int[] pairsOf(int satelliteId) {
+        int satellite = pairedSatellites == null ? -1 : pairedSatellites.indexOf(satelliteId);
+        return satellite < 0 ? NO_PAIRS : pairsBySatellite[satellite];
+    }
+
+    /**
+     * Returns true if the raw value is past the limit in this rule's direction.
+     */
+    boolean crosses(double rawValue, double limitValue) {
+        return direction == Direction.ABOVE ? rawValue > limitValue : rawValue < limitValue;
+    }
+
+    /**
+     * Returns what the reading means for this rule: {@link #ENTER}, {@link #HOLD}, {@link #CLEAR} or {@link #NONE}.
+     * Without hysteresis it's only ever ENTER (past the limit) or NONE. For TREND, ANOMALY and SEQUENCE rules
+     * it's always {@link #SAMPLE}.
+     *
+     * A yellow rule only covers the band between the yellow and the red limit, so a reading that is already
+     * red counts for the red rule and not for the yellow one. That way each severity keeps its own window
+     * and a red excursion doesn't also raise a yellow alert. It doesn't end a yellow violation either.
+     */
+    byte classify(double rawValue, double limitValue, double redLimitValue) {
+        if (type != Type.LIMIT) {
+            return SAMPLE;
+        }
+        if (redLimit != null && crosses(rawValue, redLimitValue)) {
+            return NONE;
+        }
+        if (crosses(rawValue, limitValue + enterOffset)) {
+            return ENTER;
+        }
+        if (!hysteresis) {
+            return NONE;
+        }
+        return crosses(rawValue, limitValue + exitOffset) ? HOLD : CLEAR;
+    }
+
+    byte classify(App.TelemetryRecord record) {
+        return classify(record.rawValue, limitValue(record), redLimit == null ? 0 : redLimit.of(record));
+    }
+
+    byte classify(TelemetryBatch batch, int row) {
+        return classify(batch.rawValues[row], limitValue(batch, row), redLimit == null ? 0 : redLimit.of(batch, row));
+    }
+
+    // The value of this rule's limit in the record, or 0 if the rule has no limit.
+    private double limitValue(App.TelemetryRecord record) {
+        return limit == null ? 0 : limit.of(record);
+    }
+
+    private double limitValue(TelemetryBatch batch, int row) {
+        return limit == null ? 0 : limit.of(batch, row);
+    }
+
+    /**
+     * Returns the number from the record that a {@link #SAMPLE} reading of this rule needs besides its raw value:
+     * the value of the limit for TREND rules, and the ordinal of the reading's {@link Band} for SEQUENCE rules.
+     */
+    double sampleValue(App.TelemetryRecord record) {
+        if (type == Type.SEQUENCE) {
+            return Band.of(record.rawValue, record.redHighLimit, record.yellowHighLimit, record.yellowLowLimit, record.redLowLimit).ordinal();
+        }
+        return limitValue(record);
+    }
+
+    double sampleValue(TelemetryBatch batch, int row) {
+        if (type == Type.SEQUENCE) {
+            return Band.of(batch.rawValues[row], batch.redHighLimits[row], batch.yellowHighLimits[row], batch.yellowLowLimits[row],
+                    batch.redLowLimits[row]).ordinal();
+        }
+        return limitValue(batch, row);
+    }
+
+    /**
+     * Returns whichever of the two raw values is further past the limit in this rule's direction.
+     */
+    double worse(double a, double b) {
+        return direction == Direction.ABOVE ? Math.max(a, b) : Math.min(a, b);
+    }
+
+    /**
+     * Returns the severity alerts of this rule get.
+     */
+    String severity() {
+        if (severity != null) {
+            return severity;
+        }
+        switch (type) {
+            case TREND:
+                return limit.severity + " TREND";
+            case ANOMALY:
+                return direction == Direction.ABOVE ? "ANOMALY HIGH" : "ANOMALY LOW";
+            case SEQUENCE:
+                return sequence[sequence.length - 1].severity + " SEQUENCE";
+            case COMPOUND:
+                return "CRITICAL";
+            default:
+                return limit.severity;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.COMPOUND) {
+            return "COMPOUND " + (components == null ? null : String.join("+", components));
+        }
+        String what = type == Type.ANOMALY ? sigmas + " sigmas"
+                : type == Type.SEQUENCE ? Arrays.toString(sequence) + " in " + withinSeconds + "s" : String.valueOf(limit);
+        return (type == Type.LIMIT ? "" : type + " ") + component + " " + direction + " " + what + " " + count + " in " + windowSeconds + "s";
+    }
+}
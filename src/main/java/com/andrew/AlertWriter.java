@@ -0,0 +1,124 @@
+package com.andrew;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * This class writes alerts as JSON straight to an output stream, one alert at a time.
+ *
+ * Nothing is collected first: each alert is serialized into a buffered stream through a single Jackson
+ * {@link JsonGenerator}, so even millions of alerts never sit in memory as one big String. All writers
+ * share one {@link ObjectMapper} that is set up once, instead of paying for a new one on every call.
+ *
+ * There are two layouts:
+ *   - {@link #array(OutputStream, boolean)} writes a JSON array, indented for people or compact for machines.
+ *   - {@link #lines(OutputStream)} writes one compact JSON object per line and flushes after each one,
+ *     so a live consumer sees every alert right away.
+ */
+final class AlertWriter implements Consumer<App.Alert>, Closeable {
+
+    // Shared by every writer. ObjectMapper is thread-safe once it's configured.
+    // We decide ourselves when to flush, instead of after every single alert.
+    static final ObjectMapper MAPPER = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    // Looking up the Alert serializer once, here, means the first alert doesn't pay for Jackson's setup.
+    private static final ObjectWriter ALERT_WRITER = MAPPER.writerFor(App.Alert.class);
+
+    private final JsonGenerator generator;
+    private final boolean lines;
+    // Whether the array has been opened, which waits for the first alert or for finish().
+    private boolean started;
+
+    private AlertWriter(OutputStream out, boolean pretty, boolean lines) {
+        try {
+            // The caller owns the stream (usually System.out), so closing the generator must not close it.
+            generator = MAPPER.getFactory().createGenerator(new BufferedOutputStream(out, 1 << 16));
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // And it must not close an array that wasn't finished, or a run that failed would look complete.
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            if (pretty) {
+                // The same layout SerializationFeature.INDENT_OUTPUT gives.
+                generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            }
+            if (lines) {
+                // We end every line ourselves, so no separator between values is needed.
+                generator.setRootValueSeparator(null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.lines = lines;
+    }
+
+    /**
+     * Makes a writer that writes all alerts as one JSON array, closed by {@link #finish()}.
+     *
+     * @param pretty true to indent the output like the original pretty printer, false for compact output.
+     */
+    static AlertWriter array(OutputStream out, boolean pretty) {
+        return new AlertWriter(out, pretty, false);
+    }
+
+    /**
+     * Makes a writer that writes every alert as a compact JSON object on its own line, flushed right away.
+     */
+    static AlertWriter lines(OutputStream out) {
+        return new AlertWriter(out, false, true);
+    }
+
+    /**
+     * Writes one alert.
+     */
+    @Override
+    public void accept(App.Alert alert) {
+        try {
+            start();
+            ALERT_WRITER.writeValue(generator, alert);
+            if (lines) {
+                generator.writeRaw('\n');
+                generator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the array, if there is one, once every alert has been written. Only call this when the run went
+     * through: without it the array is left open, so a consumer can tell that the output stopped half way.
+     */
+    void finish() throws IOException {
+        if (!lines) {
+            start();
+            generator.writeEndArray();
+            generator.writeRaw(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Flushes whatever was written to the stream. It doesn't finish the JSON, see {@link #finish()}.
+     * If nothing was written at all, like when the input can't be read, nothing is printed.
+     */
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+    // Opens the array the first time something is written to it.
+    private void start() throws IOException {
+        if (!lines && !started) {
+            generator.writeStartArray();
+            started = true;
+        }
+    }
+}
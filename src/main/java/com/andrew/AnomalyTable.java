@@ -0,0 +1,80 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class learns the usual readings of every (satellite, ANOMALY rule), for {@link AlertRule.Type#ANOMALY} rules.
+ * It's indexed like the {@link ViolationWindowDetector}.
+ *
+ * The baseline of a key is an exponentially weighted moving average of its raw values, and an exponentially
+ * weighted variance around it. Both are updated from the last values with every reading, so a key only needs
+ * a mean, a variance, the time of its last reading and a count, in primitive arrays, however long it runs. The
+ * weight of a reading follows the time since the one before, like the EWMAs of {@link WindowStats}, with the
+ * rule's baseline time as the time constant: the longer it is, the slower the baseline follows a drift.
+ *
+ * A reading is a violation when it's more than the rule's number of standard deviations past the baseline in
+ * the rule's direction. It's compared with the baseline of the readings before it, and only then taken into it,
+ * so an odd reading can't hide itself. Until a key has {@link #BASELINE_READINGS} readings it has no baseline
+ * yet and none of its readings are violations. Readings of a key have to be passed in time order.
+ */
+final class AnomalyTable {
+
+    // How many readings a key needs before its baseline is good enough to compare readings with.
+    static final int BASELINE_READINGS = 10;
+
+    private double[] means = new double[16];
+    private double[] variances = new double[16];
+    private long[] lastTimestamps = new long[16];
+    private int[] counts = new int[16];
+
+    /**
+     * Adds a reading of the key with the given index, and returns whether it's a violation of the anomaly rule:
+     * {@link AlertRule#ENTER} if it is, {@link AlertRule#CLEAR} if it isn't.
+     */
+    byte classify(int index, AlertRule rule, long timestamp, double rawValue) {
+        if (index >= counts.length) {
+            int length = Math.max(index + 1, counts.length * 2);
+            means = Arrays.copyOf(means, length);
+            variances = Arrays.copyOf(variances, length);
+            lastTimestamps = Arrays.copyOf(lastTimestamps, length);
+            counts = Arrays.copyOf(counts, length);
+        }
+        int count = counts[index];
+        byte kind = AlertRule.CLEAR;
+        if (count >= BASELINE_READINGS) {
+            double band = rule.sigmas * Math.sqrt(variances[index]);
+            double threshold = rule.direction == AlertRule.Direction.ABOVE ? means[index] + band : means[index] - band;
+            if (rule.crosses(rawValue, threshold)) {
+                kind = AlertRule.ENTER;
+            }
+        }
+
+        if (count == 0) {
+            // The very first reading starts the baseline off.
+            means[index] = rawValue;
+        } else if (timestamp > lastTimestamps[index]) {
+            double weight = 1 - Math.exp(-(timestamp - lastTimestamps[index]) / (double) rule.baselineMillis);
+            double difference = rawValue - means[index];
+            double step = weight * difference;
+            means[index] += step;
+            variances[index] = (1 - weight) * (variances[index] + difference * step);
+        }
+        lastTimestamps[index] = timestamp;
+        counts[index] = count + 1;
+        return kind;
+    }
+
+    /**
+     * Returns the key's baseline, the weighted mean of its readings so far.
+     */
+    double mean(int index) {
+        return means[index];
+    }
+
+    /**
+     * Returns the weighted standard deviation of the key's readings around its baseline.
+     */
+    double standardDeviation(int index) {
+        return Math.sqrt(variances[index]);
+    }
+}
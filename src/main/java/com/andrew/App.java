@@ -1,13 +1,9 @@
 package com.andrew;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
-import java.awt.*;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
@@ -16,6 +12,11 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 
 /**
@@ -24,160 +25,815 @@ import java.util.List;
  */
 public class App
 {
-    private static final Duration WINDOW_DURATION = Duration.ofMinutes(5);
+    // The flags main understands.
+    private static final List<String> MODES = Arrays.asList("--stream", "--parallel", "--live");
+    // With --stats and --live, how often each satellite prints a health snapshot, in telemetry time.
+    private static final long STATS_PERIOD_MILLIS = 60_000;
 
     public static void main( String[] args ) throws Exception {
-        // Checks to see if you put one argument (the file path).
-        if( args.length != 1 ){
-            System.err.println("Usage: TelemetryApp <inputFilePath>");
+        // An optional mode flag ("--stream", "--parallel" or "--live"), "--compact", "--stats" and "--rules <file>"
+        // can come before the file path.
+        String mode = null;
+        boolean compact = false;
+        boolean stats = false;
+        String rulesFile = null;
+        String inputFile = null;
+        boolean validArguments = true;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (MODES.contains(arg) && mode == null) {
+                mode = arg;
+            } else if ("--compact".equals(arg)) {
+                compact = true;
+            } else if ("--stats".equals(arg)) {
+                stats = true;
+            } else if ("--rules".equals(arg) && rulesFile == null && i + 1 < args.length) {
+                rulesFile = args[++i];
+            } else if (!arg.startsWith("--") && inputFile == null) {
+                inputFile = arg;
+            } else {
+                validArguments = false;
+            }
+        }
+
+        // Checks to see if you put the file path, and nothing we don't understand.
+        if( !validArguments || inputFile == null ){
+            System.err.println("Usage: TelemetryApp [--stream | --parallel | --live] [--compact] [--stats] [--rules <rulesFile>] <inputFilePath>");
+            System.err.println("       With --live, use - as the file path to read from standard input.");
+            System.err.println("       --stats adds rolling window stats to every alert, and with --live prints them every minute too.");
+            System.err.println("       Without --rules, the built-in BATT and TSTAT rules are used.");
             System.exit(1);
         }
 
-        // The first argument is assumed to be the path to our input file.
-        String inputFile = args[0];
+        // The alert rules are read once, before any telemetry, and compiled into a table by component code.
+        RuleTable rules = rulesFile != null ? RuleTable.load(Paths.get(rulesFile)) : RuleTable.defaults();
+
+        if ("--live".equals(mode)) {
+            // Alerts are printed the moment they happen, one compact JSON object per line.
+            try (AlertWriter out = AlertWriter.lines(System.out)) {
+                liveTelemetry(inputFile, rules, stats, out);
+                out.finish();
+            }
+            return;
+        }
 
-        //Read telemetry records from the file specified
-        List<TelemetryRecord> records = readTelemetryRecords(inputFile);
+        // Alerts are written out as JSON as soon as they're found, instead of being collected first.
+        // The output is a JSON array, indented unless --compact was given.
+        try (AlertWriter out = AlertWriter.array(System.out, !compact)) {
+            if ("--stream".equals(mode)) {
+                // Read, check and drop each record as we go, so memory doesn't grow with the file size.
+                // Every alert goes to the writer the moment it's known, so none of them wait for the end of the file.
+                streamTelemetry(inputFile, rules, stats, out);
+            } else if ("--parallel".equals(mode)) {
+                // Split the file across all cores and merge what each of them found.
+                processTelemetryParallel(inputFile, rules, Runtime.getRuntime().availableProcessors(), stats, out);
+            } else {
+                //Read telemetry records from the file specified
+                TelemetryBatch records = readTelemetryRecords(inputFile);
 
-        // Process these telemetry records to find any alerts that need to be generated.
-        List<Alert> alerts = processTelemetry(records);
+                // Process these telemetry records to find any alerts that need to be generated.
+                processTelemetry(records, rules, stats, out);
+            }
+            // Only now is the array closed. If anything went wrong before this, it's left open.
+            out.finish();
+        }
+    }
 
-        // Converts the list of alerts to JSON format and print it out.
-        outputAlertAsJSON(alerts);
+    /**
+     * This method reads telemetry records from a file.
+     * Each line in the file is a single "telemetry record," containing data about satellites.
+     *
+     * @param filePath The path to the file containing telemetry data.
+     * @return A TelemetryBatch holding every record that was parsed from the file, in file order.
+     */
+    private static TelemetryBatch readTelemetryRecords(String filePath) throws IOException {
+        // We'll store each line we read from the file as one row of this batch.
+        TelemetryBatch records = new TelemetryBatch();
 
-        //prints out the alert to console
-        System.out.println(alerts);
+        // The reader hands us the same record object for every line, and the batch copies its values.
+        // Blank lines are skipped by the reader.
+        MappedTelemetryReader.read(Paths.get(filePath), records::add);
+        return records;
     }
 
+
     /**
-     * This method takes a list of alerts and prints them to the console in JSON format.
-     * JSON (JavaScript Object Notation) is a format that looks like:
-     * [
-     *   {
-     *     "sateliteId": 1,
-     *     "severity": "RED HIGH",
-     *     ...
-     *   },
-     *   ...
-     * ]
+     * This method processes all the telemetry records and finds any "alerts" that need to be created.
+     * An "alert" occurs when a rule sees its number of "violation" records (three, with the built-in rules)
+     * within its window (5 minutes) for the same satellite. Every episode gets its own alert: once the rule
+     * stops holding, the next time it holds raises a new one. An episode that is over, because a later
+     * violation or the rest of the telemetry came after its end, also gets a RESOLVED message.
+     *
+     * @param records A TelemetryBatch of records (data from the file).
+     * @param rules   The alert rules to check the records against.
+     * @param stats   Whether to add the rolling window stats of its (satellite, component) to every alert.
+     * @param alerts  Receives an Alert for each serious issue that was found.
      */
-    private static void outputAlertAsJSON(List<Alert> alerts) throws Exception {
-        // Create an object that can convert Java objects to JSON strings.
-        ObjectMapper mapper = new ObjectMapper();
+    private static void processTelemetry(TelemetryBatch records, RuleTable rules, boolean stats, Consumer<Alert> alerts) {
+        // With stats, every reading of a component with rules is kept as well, grouped by (satellite, component).
+        ComponentReadings readings = stats ? new ComponentReadings() : null;
+        findAlerts(groupViolations(records, rules, readings), readings, rules, alerts);
+    }
 
-        // Tell the mapper to format the JSON output in a pretty, easy-to-read way.
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+    /**
+     * This method picks out the "violation" rows of the batch and groups their timestamps by satellite and rule.
+     *
+     * @param records A TelemetryBatch of records (data from the file).
+     * @param rules    The alert rules to check the records against.
+     * @param readings If not null, gets every reading of a component that has rules, grouped by (satellite, component).
+     * @return The violation timestamps of each (satellite, rule), groups in the order they were first seen.
+     */
+    private static ViolationTimestamps groupViolations(TelemetryBatch records, RuleTable rules, ComponentReadings readings) {
+        // We will group any "violation" records by a combination of:
+        //   1) which satellite it belongs to
+        //   2) which rule it broke (and so which component is affected)
+        //
+        // For example, if we have satellite 1000 and the rule for BATT,
+        // all violations for that pair go into the same group.
+        // With stats, the violations keep which record they came from, to stop the stats right at that record.
+        ViolationTimestamps violationMap = new ViolationTimestamps(readings != null);
+        // The red and yellow bands of a block of rows at a time, for the rules that are plain limit checks.
+        LimitMasks masks = new LimitMasks();
+        // We loop through all rows and check them against the rules for their component.
+        for (int row = 0; row < records.size; row++) {
+            if (row % LimitMasks.BLOCK_ROWS == 0) {
+                masks.scan(records, row);
+            }
+            // Every record, violation or not, shows how far the telemetry goes.
+            violationMap.see(records.timestamps[row]);
+            AlertRule[] componentRules = rules.rulesFor(records.components[row]);
+            if (readings != null && componentRules.length > 0) {
+                readings.add(records, row, violationMap.records() - 1);
+            }
+            for (AlertRule rule : componentRules) {
+                // Without hysteresis that's ENTER for a violation and NONE otherwise. With it, readings near the
+                // limit are kept too, since they count as violations only while the group is violating.
+                // TREND rules keep every reading, with its limit, and find their violations once the group is sorted.
+                // Plain limit rules just look up the row's bit in the band of their limit.
+                byte kind = rule.masked ? (masks.test(rule.limit, row) ? AlertRule.ENTER : AlertRule.NONE) : rule.classify(records, row);
+                if (kind != AlertRule.NONE) {
+                    // Pack the satellite id and rule id into one long to use as the group key.
+                    // The group gets created the first time we add to it.
+                    violationMap.add(StreamKey.of(records.satelliteIds[row], (short) rule.id), records.timestamps[row], records.rawValues[row],
+                            kind, rule.sampleValue(records, row));
+                }
+            }
+        }
+        return violationMap;
+    }
 
-        // Convert our list of alerts to a JSON string.
-        String json = mapper.writeValueAsString(alerts);
+    /**
+     * This method checks each group of violations for its rule's number of violations within the rule's window.
+     *
+     * @param violationMap The violation timestamps of each (satellite, rule), as built by {@link #groupViolations(TelemetryBatch, RuleTable, ComponentReadings)}.
+     * @param readings     If not null, every reading of each (satellite, component), for the rolling stats added to each alert.
+     * @param rules        The rules the groups belong to.
+     * @param alerts       Receives one Alert per episode, group by group in the order the groups were first seen,
+     *                     and each group's episodes in time order, each followed by its RESOLVED message if it's over.
+     *                     Alerts held back by a rule's cooldown are left out and summed up after their hold-off.
+     */
+    private static void findAlerts(ViolationTimestamps violationMap, ComponentReadings readings, RuleTable rules, Consumer<Alert> alerts) {
+        // The detector remembers only the last few violations of each group and tells us when they fit in the window.
+        ViolationWindowDetector detector = new ViolationWindowDetector(rules.maxCount());
+        // Holds back alerts that come too soon after the last one of their group.
+        CooldownTable cooldowns = new CooldownTable();
+        // Follow the trend of the groups of TREND rules, the baseline of the groups of ANOMALY rules,
+        // and the matches of the groups of SEQUENCE rules.
+        TrendTable trends = new TrendTable();
+        AnomalyTable anomalies = new AnomalyTable();
+        SequenceTable sequences = new SequenceTable();
+        // Remembers the episodes of the groups whose episodes are joined, for tandem pairs and COMPOUND rules.
+        EpisodeTable episodes = new EpisodeTable();
+        // Now that we've grouped all the violations, we need to check each group.
+        for (int group = 0; group < violationMap.size(); group++) {
+            // Get the violations for this satellite + rule.
+            long key = violationMap.key(group);
+            AlertRule rule = rules.rule(StreamKey.code(key));
+            // Sort the violations by the time they occurred (earliest first), since the detector needs them in order.
+            violationMap.sort(group);
+            long[] timestamps = violationMap.timestamps(group);
+            double[] rawValues = violationMap.rawValues(group);
+            byte[] kinds = violationMap.kinds(group);
+            double[] sampleValues = violationMap.sampleValues(group);
+            long[] records = violationMap.sequences(group);
+            int n = violationMap.count(group);
 
-        // Print the JSON string to the console.
-        System.out.println(json);
+            // The rolling stats of the group's (satellite, component), which follow the violations through its readings.
+            WindowStats stats = null;
+            int readingGroup = -1;
+            int nextReading = 0;
+            if (readings != null) {
+                readingGroup = readings.indexOf(StreamKey.of(StreamKey.satelliteId(key), rule.componentCode));
+                readings.sort(readingGroup);
+                stats = new WindowStats(rules.statsWindowMillis(rule.componentCode));
+            }
 
+            // Hand all the violations to the detector, which tells us each time a new episode opens or an old one is over.
+            // The groups go into the detector in order, so each one gets the same index there.
+            int index = detector.index(key);
+            for (int i = 0; i < n; i++) {
+                if (stats != null) {
+                    // Every reading up to this violation goes into the stats, which is where the streaming paths' stats are too.
+                    // Of the readings with the same timestamp, only the ones read before this violation's record count.
+                    while (nextReading < readings.count(readingGroup) && (readings.timestamp(readingGroup, nextReading) < timestamps[i]
+                            || (readings.timestamp(readingGroup, nextReading) == timestamps[i]
+                            && readings.sequence(readingGroup, nextReading) <= records[i]))) {
+                        readings.addTo(stats, readingGroup, nextReading);
+                        nextReading++;
+                    }
+                }
+                byte kind = kinds[i];
+                if (kind == AlertRule.SAMPLE) {
+                    kind = classifySample(trends, anomalies, sequences, index, rule, timestamps[i], rawValues[i], sampleValues[i]);
+                }
+                if (detector.applyHysteresis(index, kind)) {
+                    addViolation(detector, cooldowns, episodes, index, rule, timestamps[i], rawValues[i], stats, alerts);
+                }
+            }
+            // The telemetry went on past the end of the group's last episode, so that one is over too.
+            settle(detector, cooldowns, index, rule, violationMap.watermark(), alerts);
+        }
+        // Every group's episodes are known now, so the satellites in tandem and the components of COMPOUND rules can be joined.
+        joinTandems(detector, episodes, rules, alerts);
+        joinCompounds(detector, episodes, rules, alerts);
     }
 
+    /**
+     * This method works out whether a reading of a TREND, ANOMALY or SEQUENCE rule (a {@link AlertRule#SAMPLE}) is a
+     * violation, from the readings of the key before it: {@link AlertRule#ENTER} if it is, {@link AlertRule#CLEAR} if it isn't.
+     *
+     * @param sampleValue The reading's {@link AlertRule#sampleValue}.
+     */
+    private static byte classifySample(TrendTable trends, AnomalyTable anomalies, SequenceTable sequences, int index,
+                                       AlertRule rule, long timestamp, double rawValue, double sampleValue) {
+        switch (rule.type) {
+            case TREND:
+                return trends.classify(index, rule, timestamp, rawValue, sampleValue);
+            case SEQUENCE:
+                return sequences.classify(index, rule, timestamp, (int) sampleValue);
+            default:
+                return anomalies.classify(index, rule, timestamp, rawValue);
+        }
+    }
 
+    /**
+     * This method hands one violation to the detector and passes on the alerts it causes:
+     * whatever of the key was over before this violation (see {@link #settle}), and a new Alert if
+     * this violation opens a new episode and the rule's cooldown lets it out.
+     *
+     * The key's episodes are also kept in the {@link EpisodeTable} if they're joined with others'.
+     *
+     * @param stats The rolling stats of the key's (satellite, component) to add to a new Alert, or null for none.
+     */
+    private static void addViolation(ViolationWindowDetector detector, CooldownTable cooldowns, EpisodeTable episodes, int index,
+                                     AlertRule rule, long timestamp, double rawValue, WindowStats stats, Consumer<Alert> alerts) {
+        settle(detector, cooldowns, index, rule, timestamp, alerts);
+        boolean opened = detector.add(index, timestamp, rawValue, rule);
+        if (rule.joined) {
+            episodes.update(detector, index, opened);
+        }
+        if (opened && cooldowns.allow(index, timestamp, rule.cooldownMillis)) {
+            alerts.accept(newAlert(rule, detector.key(index), detector.alertTimestamp(index), stats));
+        }
+    }
 
     /**
-     * This method reads telemetry records from a file.
-     * Each line in the file is a single "telemetry record," containing data about satellites.
+     * This method passes on what is over for the key by the given time: the RESOLVED message of an episode that
+     * ended before it (which is closed, and only reported if its alert went out), and the summary of a hold-off
+     * that held alerts back.
+     */
+    private static void settle(ViolationWindowDetector detector, CooldownTable cooldowns, int index, AlertRule rule, long time,
+                               Consumer<Alert> alerts) {
+        if (detector.endedBefore(index, time)) {
+            if (!cooldowns.isSuppressed(index)) {
+                alerts.accept(resolvedAlert(rule, detector, index));
+            }
+            detector.close(index);
+        }
+        if (cooldowns.summaryDue(index, time)) {
+            alerts.accept(suppressedSummary(rule, detector.key(index), cooldowns, index));
+        }
+    }
+
+    /**
+     * This method passes on a TANDEM alert for every two episodes of the satellites of a pair that overlap, once
+     * every episode is known. They go rule by rule and pair by pair, in the order of the rules file, and each
+     * pair's in the order of the first satellite's episodes.
      *
-     * @param filePath The path to the file containing telemetry data.
-     * @return A list of TelemetryRecord objects that were parsed from the file.
+     * A satellite's episodes start and end in time order, so the episodes of the second satellite that overlap an
+     * episode of the first are a run of them, and that run only ever moves forward. Both lists are walked once.
      */
-    private static List<TelemetryRecord> readTelemetryRecords(String filePath) throws IOException {
-        // We'll store each line we read from the file as a TelemetryRecord object in this list.
-        List<TelemetryRecord> records = new ArrayList<>();
-
-        // Try to open the file using a BufferedReader, which allows us to read it line by line.
-        try (BufferedReader br = Files.newBufferedReader(Paths.get(filePath))) {
-            String line;
-            // Keep reading until we reach the end of the file (null means end of file).
-            while ((line = br.readLine()) != null) {
-                // If a line is blank (empty), skip it.
-                if (line.trim().length() == 0) continue;
-                TelemetryRecord record = TelemetryRecord.parse(line);
-                // Add the parsed record to the list:
-                records.add(record);
+    private static void joinTandems(ViolationWindowDetector detector, EpisodeTable episodes, RuleTable rules, Consumer<Alert> alerts) {
+        for (int id = 0; id < rules.size(); id++) {
+            AlertRule rule = rules.rule(id);
+            if (rule.pairs == null) {
+                continue;
+            }
+            for (int[] pair : rule.pairs) {
+                int first = detector.indexOf(StreamKey.of(pair[0], (short) rule.id));
+                int second = detector.indexOf(StreamKey.of(pair[1], (short) rule.id));
+                // The run [from, to) of the second satellite's episodes that overlap episode i of the first.
+                int from = 0;
+                int to = 0;
+                for (int i = 0; i < episodes.count(first); i++) {
+                    long start = episodes.start(first, i);
+                    long end = episodes.end(first, i);
+                    while (from < episodes.count(second) && episodes.end(second, from) < start) {
+                        from++;
+                    }
+                    while (to < episodes.count(second) && episodes.start(second, to) <= end) {
+                        to++;
+                    }
+                    for (int j = from; j < to; j++) {
+                        alerts.accept(tandemAlert(rule, pair, Math.max(start, episodes.start(second, j))));
+                    }
+                }
             }
         }
-        return records;
     }
 
+    /**
+     * This method passes on a TANDEM alert for every episode of the key's partners that overlaps the key's episode
+     * that has just opened, as the records come in. The partners' older episodes end earlier, so only the last few
+     * of them are looked at, back to the first one that ended before this one started.
+     */
+    private static void joinTandem(AlertRule rule, ViolationWindowDetector detector, EpisodeTable episodes, int index,
+                                   Consumer<Alert> alerts) {
+        int satelliteId = StreamKey.satelliteId(detector.key(index));
+        long start = detector.alertTimestamp(index);
+        for (int position : rule.pairsOf(satelliteId)) {
+            int[] pair = rule.pairs[position];
+            int partner = detector.indexOf(StreamKey.of(pair[0] == satelliteId ? pair[1] : pair[0], (short) rule.id));
+            int first = episodes.count(partner);
+            while (first > 0 && episodes.end(partner, first - 1) >= start) {
+                first--;
+            }
+            for (int episode = first; episode < episodes.count(partner); episode++) {
+                alerts.accept(tandemAlert(rule, pair, Math.max(start, episodes.start(partner, episode))));
+            }
+        }
+    }
 
     /**
-     * This method processes all the telemetry records and finds any "alerts" that need to be created.
-     * An "alert" occurs when we see three or more "violation" records within a 5-minute window for the same satellite and component.
+     * This method passes on a CRITICAL alert every time all the components of a COMPOUND rule on the same satellite
+     * start to overlap, once every episode is known: one per stretch of time they all spend in an episode, however
+     * many episodes make it up. They go rule by rule in the order of the rules file, and each rule's in time order.
      *
-     * @param records A list of TelemetryRecords (data from the file).
-     * @return A list of Alert objects indicating serious issues that were found.
+     * Every combination of episodes, one of each component, is found once, from its episode that started last (or of
+     * those, the one whose component comes last in the rule): the other episodes have to overlap its start. Only the
+     * ones that start a stretch ({@link #overlapStartsAt}) raise an alert, and only once if several start it together.
      */
-    private static List<Alert> processTelemetry(List<TelemetryRecord> records) {
-        // We will group any "violation" records by a combination of:
-        //   1) which satellite it belongs to
-        //   2) which component is affected
-        //
-        // For example, if we have satellite 1000 with component BATT,
-        // all violations for that pair go into the same group.
-        Map<String,List<TelemetryRecord>> violationMap = new HashMap<>();
-        // We loop through all records and check if they are violations.
-        for (TelemetryRecord record : records) {
-            if(record.isViolation()){
-                // Create a string like "1000_BATT" or "1000_TSTAT" to group them.
-                String key = record.sateliteId + "_" + record.component;
-                // If we don't already have a list for this (satellite, component), create one.
-                // Then add the current record to that list.
-                violationMap.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+    private static void joinCompounds(ViolationWindowDetector detector, EpisodeTable episodes, RuleTable rules, Consumer<Alert> alerts) {
+        for (int id = 0; id < rules.size(); id++) {
+            AlertRule compound = rules.rule(id);
+            if (compound.type != AlertRule.Type.COMPOUND) {
+                continue;
+            }
+            // Each as {time, satellite id}.
+            List<long[]> found = new ArrayList<>();
+            for (int index = 0; index < detector.size(); index++) {
+                AlertRule rule = rules.rule(StreamKey.code(detector.key(index)));
+                int position = positionOf(compound, rule);
+                if (position < 0) {
+                    continue;
+                }
+                int satelliteId = StreamKey.satelliteId(detector.key(index));
+                for (int episode = 0; episode < episodes.count(index); episode++) {
+                    long start = episodes.start(index, episode);
+                    matchCompound(compound, satelliteId, 0, position, start, episodes.end(index, episode), start, detector, episodes,
+                            time -> {
+                                if (overlapStartsAt(compound, satelliteId, time, detector, episodes)) {
+                                    found.add(new long[] {time, satelliteId});
+                                }
+                            });
+                }
+            }
+            found.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            for (int i = 0; i < found.size(); i++) {
+                long[] match = found.get(i);
+                if (i == 0 || match[0] != found.get(i - 1)[0] || match[1] != found.get(i - 1)[1]) {
+                    alerts.accept(compoundAlert(compound, (int) match[1], match[0]));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method passes on a CRITICAL alert if the key's episode that has just opened makes all the components of the
+     * COMPOUND rule on its satellite start to overlap, as the records come in. It goes through every combination of
+     * the satellite's episodes, one of each other component, that overlap the new one. A combination that starts a
+     * stretch of overlap ({@link #overlapStartsAt}) only raises an alert if the components weren't all overlapping
+     * then already without the new episode, which is when an earlier combination raised it.
+     */
+    private static void joinCompound(AlertRule compound, AlertRule rule, ViolationWindowDetector detector, EpisodeTable episodes,
+                                     int index, Consumer<Alert> alerts) {
+        int satelliteId = StreamKey.satelliteId(detector.key(index));
+        int latest = episodes.count(index) - 1;
+        // Every combination that starts the same stretch starts it at the same time, so that's what is remembered.
+        List<Long> raised = new ArrayList<>();
+        matchCompound(compound, satelliteId, 0, positionOf(compound, rule), episodes.start(index, latest),
+                episodes.end(index, latest), Long.MAX_VALUE, detector, episodes, time -> {
+                    if (!raised.contains(time) && overlapStartsAt(compound, satelliteId, time, detector, episodes)
+                            && !overlapping(compound, satelliteId, time, index, latest, detector, episodes)) {
+                        raised.add(time);
+                        alerts.accept(compoundAlert(compound, satelliteId, time));
+                    }
+                });
+    }
 
+    /**
+     * This method picks an episode of the satellite for every component of the COMPOUND rule from the given
+     * position on, except the one at skip, that overlaps all the episodes picked so far, and passes on the time
+     * each full combination starts to overlap.
+     *
+     * @param from        The position in the rule's components to pick an episode for next.
+     * @param skip        The position of the component whose episode the combination is built around.
+     * @param overlapFrom The start of the overlap of the episodes picked so far.
+     * @param overlapTo   The end of the overlap of the episodes picked so far.
+     * @param latestStart The latest start the other episodes can have, and only for components before skip; for
+     *                    the batch paths, where every combination is found from its episode that started last.
+     */
+    private static void matchCompound(AlertRule compound, int satelliteId, int from, int skip, long overlapFrom, long overlapTo,
+                                      long latestStart, ViolationWindowDetector detector, EpisodeTable episodes, LongConsumer matches) {
+        if (from == compound.componentCodes.length) {
+            matches.accept(overlapFrom);
+            return;
+        }
+        if (from == skip) {
+            matchCompound(compound, satelliteId, from + 1, skip, overlapFrom, overlapTo, latestStart, detector, episodes, matches);
+            return;
+        }
+        for (AlertRule rule : compound.componentRules[from]) {
+            int index = detector.indexOf(StreamKey.of(satelliteId, (short) rule.id));
+            // The key's older episodes end earlier, so walk back until one ends before the overlap starts.
+            for (int episode = episodes.count(index) - 1; episode >= 0 && episodes.end(index, episode) >= overlapFrom; episode--) {
+                long start = episodes.start(index, episode);
+                if (start > overlapTo || start > latestStart || (start == latestStart && from > skip)) {
+                    continue;
+                }
+                matchCompound(compound, satelliteId, from + 1, skip, Math.max(overlapFrom, start),
+                        Math.min(overlapTo, episodes.end(index, episode)), latestStart, detector, episodes, matches);
             }
         }
+    }
 
-        // We'll store any alerts we find in this list.
-        List<Alert> alerts = new ArrayList<>();
-        // Now that we've grouped all the violations, we need to check each group.
-        // We'll see if there are three or more violations within 5 minutes in each group.
-        for (Map.Entry<String, List<TelemetryRecord>> entry : violationMap.entrySet()) {
-            // Get the list of violations for this satellite + component.
-
-            List<TelemetryRecord> violations = entry.getValue();
-            // Sort the violations by the time they occurred (earliest first).
-            violations.sort(Comparator.comparing(r -> r.timestamp));
-            int n = violations.size();
-
-            // We'll use two indices, windowStart and windowEnd, to define
-            // the time window of violations we're looking at.
-            int windowStart = 0;
-
-            // Move windowEnd through the whole list of violations.
-            for (int windowEnd = 0; windowEnd < n; windowEnd++) {
-                // If the window (from the record at windowStart to the record at windowEnd)
-                // is bigger than 5 minutes, we move the windowStart forward until it's within 5 minutes.
-                while (windowStart < windowEnd &&
-                        Duration.between(violations.get(windowStart).timestamp, violations.get(windowEnd).timestamp)
-                                .compareTo(WINDOW_DURATION) > 0) {
-                    windowStart++;
+    // Returns the position of the rule's component in the COMPOUND rule's components, or -1 if its episodes don't count for it.
+    private static int positionOf(AlertRule compound, AlertRule rule) {
+        for (int position = 0; position < compound.componentRules.length; position++) {
+            for (AlertRule componentRule : compound.componentRules[position]) {
+                if (componentRule == rule) {
+                    return position;
                 }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method returns whether all the components of the COMPOUND rule on the satellite start to overlap at the
+     * given time, where a combination of their episodes starts to overlap: that is, whether one of the components
+     * has no episode that was already going on just before it. Otherwise the time is part of a stretch of overlap
+     * that started earlier, and has had its alert.
+     */
+    private static boolean overlapStartsAt(AlertRule compound, int satelliteId, long time, ViolationWindowDetector detector,
+                                           EpisodeTable episodes) {
+        for (int position = 0; position < compound.componentRules.length; position++) {
+            if (!covered(compound, satelliteId, position, time, true, -1, -1, detector, episodes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method returns whether all the components of the COMPOUND rule on the satellite are in an episode at the
+     * given time, leaving out one episode (of the key with the given index).
+     */
+    private static boolean overlapping(AlertRule compound, int satelliteId, long time, int skipIndex, int skipEpisode,
+                                       ViolationWindowDetector detector, EpisodeTable episodes) {
+        for (int position = 0; position < compound.componentRules.length; position++) {
+            if (!covered(compound, satelliteId, position, time, false, skipIndex, skipEpisode, detector, episodes)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                // Now we check how many violations are in the window:
-                // (windowEnd - windowStart + 1) is the count.
-                if ((windowEnd - windowStart + 1) >= 3) {
-                    // We found at least three violations in 5 minutes!
-                    // The first record in this windowStart gives us the satellite ID, component, timestamp, etc.
-                    TelemetryRecord alertRecord = violations.get(windowStart);
-
-                    // The severity depends on which component had the violation.
-                    // If it's BATT, we call it "RED LOW"; if it's something else (TSTAT here), it's "RED HIGH".
-                    String severity = ("BATT".equals(alertRecord.component)) ? "RED LOW" : "RED HIGH";
-
-                    // Create an Alert object and add it to our list of alerts.
-                    alerts.add(new Alert(alertRecord.sateliteId, severity, alertRecord.component, alertRecord.timestamp));
-                    // Only one alert per group is needed.
-                    break;
+    /**
+     * This method returns whether the satellite has an episode of the component at the position in the COMPOUND rule
+     * that goes on at the given time, other than the one it's told to skip.
+     *
+     * @param before Whether the episode also has to have started before that time.
+     */
+    private static boolean covered(AlertRule compound, int satelliteId, int position, long time, boolean before,
+                                   int skipIndex, int skipEpisode, ViolationWindowDetector detector, EpisodeTable episodes) {
+        for (AlertRule rule : compound.componentRules[position]) {
+            int index = detector.indexOf(StreamKey.of(satelliteId, (short) rule.id));
+            // The key's older episodes end earlier, so walk back until one ends before the time.
+            for (int episode = episodes.count(index) - 1; episode >= 0 && episodes.end(index, episode) >= time; episode--) {
+                long start = episodes.start(index, episode);
+                if ((before ? start < time : start <= time) && !(index == skipIndex && episode == skipEpisode)) {
+                    return true;
                 }
             }
         }
-        // After checking every group, return the list of alerts we found.
-        return alerts;
+        return false;
+    }
+
+    /**
+     * This method builds the CRITICAL alert of a COMPOUND rule, from the time all its components were in an episode.
+     */
+    private static Alert compoundAlert(AlertRule compound, int satelliteId, long timestamp) {
+        return Alert.compound(satelliteId, compound.severity(), String.join("+", compound.components), Instant.ofEpochMilli(timestamp));
+    }
+
+    /**
+     * This method builds the TANDEM alert of a pair of satellites, from the time both of them were in an episode.
+     */
+    private static Alert tandemAlert(AlertRule rule, int[] pair, long timestamp) {
+        return Alert.tandem(pair[0], pair[1], rule.severity(), rule.component, Instant.ofEpochMilli(timestamp));
+    }
+
+    /**
+     * This method builds the alert for a (satellite, rule) group.
+     *
+     * @param rule      The rule that raised the alert. It decides the component and the severity.
+     * @param key       The packed (satellite, rule) key of the group.
+     * @param timestamp The timestamp of the first violation in the window that raised the alert.
+     * @param stats     The rolling stats of the group's (satellite, component) as the alert is raised, or null for none.
+     */
+    private static Alert newAlert(AlertRule rule, long key, long timestamp, WindowStats stats) {
+        Alert alert = new Alert(StreamKey.satelliteId(key), rule.severity(), rule.component, Instant.ofEpochMilli(timestamp));
+        if (stats != null) {
+            alert.stats = stats.summary();
+        }
+        return alert;
+    }
+
+    /**
+     * This method builds the RESOLVED message for the key's latest episode, which has to be over.
+     */
+    private static Alert resolvedAlert(AlertRule rule, ViolationWindowDetector detector, int index) {
+        long key = detector.key(index);
+        return Alert.resolved(StreamKey.satelliteId(key), rule.severity(), rule.component,
+                Instant.ofEpochMilli(detector.alertTimestamp(index)), Instant.ofEpochMilli(detector.episodeEnd(index)), detector.peak(index));
+    }
+
+    /**
+     * This method builds the summary of the alerts the key held back during its hold-off, which has to be over.
+     */
+    private static Alert suppressedSummary(AlertRule rule, long key, CooldownTable cooldowns, int index) {
+        return Alert.suppressed(StreamKey.satelliteId(key), rule.severity(), rule.component,
+                Instant.ofEpochMilli(cooldowns.holdOffStart(index)), Instant.ofEpochMilli(cooldowns.holdOffEnd(index)),
+                cooldowns.takeSuppressed(index));
+    }
+
+    /**
+     * This method finds the same alerts as {@link #processTelemetry(TelemetryBatch, RuleTable, boolean, Consumer)}, but spreads the reading across threads.
+     *
+     * The file is cut into byte ranges that start and end on line boundaries. Each worker maps its own range,
+     * parses it and keeps only the violation timestamps, grouped by (satellite, rule) in the order it read them.
+     * Once every worker is done, the groups are merged range by range, in file order. That gives exactly the same
+     * groups, in the same order, with the same violations in each, as {@link #groupViolations(TelemetryBatch, RuleTable, ComponentReadings)}
+     * builds for the whole file, so {@link #findAlerts(ViolationTimestamps, ComponentReadings, RuleTable, Consumer)} returns the same
+     * alerts as the single-threaded run. With stats the ranges keep every reading of the components with rules too,
+     * merged the same way.
+     *
+     * @param filePath The path to the file containing telemetry data.
+     * @param rules    The alert rules to check the records against.
+     * @param threads  How many workers to read the file with.
+     * @param stats    Whether to add the rolling window stats of its (satellite, component) to every alert.
+     * @param alerts   Receives the same alerts, in the same order, as the batch path gives for the same file.
+     */
+    private static void processTelemetryParallel(String filePath, RuleTable rules, int threads, boolean stats,
+                                                 Consumer<Alert> alerts) throws Exception {
+        Path path = Paths.get(filePath);
+        // A few ranges per thread, so one slow range doesn't leave the other cores idle at the end.
+        long[] boundaries = MappedTelemetryReader.split(path, threads * 4);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Each range becomes one task that returns its own groups of violations.
+            List<Future<ViolationTimestamps>> results = new ArrayList<>();
+            List<ComponentReadings> rangeReadings = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                ComponentReadings readings = stats ? new ComponentReadings() : null;
+                rangeReadings.add(readings);
+                results.add(executor.submit(() -> {
+                    ViolationTimestamps rangeViolations = new ViolationTimestamps(readings != null);
+                    MappedTelemetryReader.read(path, start, end, record -> {
+                        rangeViolations.see(record.timestamp);
+                        AlertRule[] componentRules = rules.rulesFor(record.componentCode);
+                        if (readings != null && componentRules.length > 0) {
+                            readings.add(record, rangeViolations.records() - 1);
+                        }
+                        for (AlertRule rule : componentRules) {
+                            byte kind = rule.classify(record);
+                            if (kind != AlertRule.NONE) {
+                                rangeViolations.add(StreamKey.of(record.sateliteId, (short) rule.id), record.timestamp, record.rawValue,
+                                        kind, rule.sampleValue(record));
+                            }
+                        }
+                    });
+                    return rangeViolations;
+                }));
+            }
+
+            // Merge the ranges in file order, so groups are created in the same order as groupViolations creates them.
+            ViolationTimestamps violationMap = new ViolationTimestamps(stats);
+            ComponentReadings readings = stats ? new ComponentReadings() : null;
+            for (int i = 0; i < results.size(); i++) {
+                // The range's records come after all the ones merged so far.
+                long offset = violationMap.records();
+                violationMap.addAll(results.get(i).get());
+                if (readings != null) {
+                    readings.addAll(rangeReadings.get(i), offset);
+                }
+            }
+            findAlerts(violationMap, readings, rules, alerts);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * This method finds the same alerts as {@link #processTelemetry(TelemetryBatch, RuleTable, boolean, Consumer)}, but without ever holding
+     * the whole file in memory. Each line is read, parsed, checked and then dropped straight away, and each alert
+     * is passed on the moment it's known, so nothing waits for the end of the file.
+     *
+     * It runs the same pipeline as {@link #liveTelemetry}, just without the HEALTH messages and the latency summary.
+     * Ground-station dumps are written in time order, so the violations of each (satellite, rule) arrive already
+     * sorted and can go straight into the detector. What we keep is the {@link ViolationWindowDetector}'s ring of
+     * the last few violations of every (satellite, rule), the episodes that are still open, and for joined rules
+     * the episodes of the last window, so memory depends on how many streams are active, and not on how big the
+     * file is or how many alerts it has.
+     *
+     * The alerts are the same as the batch path's, but they come out in the order they happened rather than grouped
+     * by (satellite, rule): grouping them would mean holding every one of them until the end of the file. Unlike the
+     * batch path, which sorts every group first, this needs the file in time order. A record older than one before
+     * it stops the run with an IllegalArgumentException, instead of quietly giving different alerts.
+     *
+     * @param filePath The path to the file containing telemetry data.
+     * @param rules    The alert rules to check the records against.
+     * @param stats    Whether to add the rolling window stats of its (satellite, component) to every alert.
+     * @param alerts   Receives each alert as soon as it's known.
+     */
+    private static void streamTelemetry(String filePath, RuleTable rules, boolean stats, Consumer<Alert> alerts) throws IOException {
+        watchTelemetry(filePath, rules, stats, false, alerts);
+    }
+
+    /**
+     * This method watches telemetry as it comes in and prints each alert the moment it's raised,
+     * instead of waiting for the whole input to be read.
+     *
+     * Records go through the same {@link ViolationWindowDetector} as the streaming path, and as soon as a
+     * violation opens a new episode its alert is handed to the writer, which prints it as one
+     * line of JSON and flushes it. Every open episode waits in a queue ordered by its end time, and once a
+     * record arrives from after that end, its RESOLVED message is printed the same way. An episode that was
+     * extended in the meantime just goes back in the queue with its new end. The records have to come in time
+     * order: one older than a record before it is skipped, with a warning on stderr. Hold-offs that held alerts back
+     * wait in a second queue, and their summary is printed once a record arrives from after their end.
+     * With stats, every alert carries the rolling stats of its (satellite, component), and every satellite also
+     * prints a HEALTH message with the stats of each of its components on its first record of every minute.
+     * Rules with tandem pairs print a TANDEM alert the moment the second of two overlapping episodes of a pair opens,
+     * and COMPOUND rules print a CRITICAL alert the moment the last of a satellite's overlapping episodes opens.
+     * For every alert (but not the HEALTH messages) we measure the time from the record that raised it entering the
+     * pipeline (straight out of the parser) to the alert being flushed, and print a latency summary to stderr when
+     * the input ends.
+     *
+     * @param input  The path to the file containing telemetry data, or "-" to read from standard input.
+     * @param rules  The alert rules to check the records against.
+     * @param stats  Whether to add rolling window stats to every alert, and print them every minute.
+     * @param alerts Receives each alert the moment it's raised, and has to write it out straight away.
+     */
+    private static void liveTelemetry(String input, RuleTable rules, boolean stats, Consumer<Alert> alerts) throws IOException {
+        watchTelemetry(input, rules, stats, true, alerts);
+    }
+
+    /**
+     * This method is the pipeline behind {@link #streamTelemetry} and {@link #liveTelemetry}: it passes on every alert
+     * the moment it's known, as the records come in.
+     *
+     * @param live Whether to print the HEALTH messages (with stats) and the latency summary of --live, and skip records
+     *             that arrive out of time order instead of stopping at the first one.
+     */
+    private static void watchTelemetry(String input, RuleTable rules, boolean stats, boolean live, Consumer<Alert> alerts)
+            throws IOException {
+        ViolationWindowDetector detector = new ViolationWindowDetector(rules.maxCount());
+        CooldownTable cooldowns = new CooldownTable();
+        TrendTable trends = new TrendTable();
+        AnomalyTable anomalies = new AnomalyTable();
+        SequenceTable sequences = new SequenceTable();
+        EpisodeTable episodes = new EpisodeTable();
+        WindowStatsTable windowStats = stats ? new WindowStatsTable(rules) : null;
+        LatencyRecorder latency = new LatencyRecorder();
+        // The open episodes as {end time, detector index}, the one that ends first at the head.
+        PriorityQueue<long[]> openEpisodes = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        // The hold-offs that held alerts back, the same way.
+        PriorityQueue<long[]> holdOffs = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        // The latest timestamp read so far. An array so the lambda below can update it.
+        long[] watermark = {ViolationTimestamps.NO_RECORDS};
+
+        // When the record being checked came out of the parser, and every alert it raises, timed from then on.
+        long[] ingested = {0};
+        Consumer<Alert> timed = alert -> {
+            alerts.accept(alert);
+            latency.record(System.nanoTime() - ingested[0]);
+        };
+
+        Consumer<TelemetryRecord> onRecord = record -> {
+            // The record is straight out of the parser, so this is where the latency of every alert it raises starts.
+            ingested[0] = System.nanoTime();
+            // The detector needs the readings of every key in time order, and everything that ended before the
+            // watermark has been let go already. A record from before it can't be checked any more, so it's skipped.
+            if (record.timestamp < watermark[0]) {
+                if (!live) {
+                    // A file can be read again without --stream, which sorts every group first.
+                    throw new IllegalArgumentException("Telemetry record out of time order, satellite " + record.sateliteId + " "
+                            + record.component + " at " + Instant.ofEpochMilli(record.timestamp) + ": --stream needs a time-sorted file");
+                }
+                System.err.println("Skipped a record older than the ones before it: satellite " + record.sateliteId + " "
+                        + record.component + " at " + Instant.ofEpochMilli(record.timestamp));
+                return;
+            }
+            // First let everything that ended before this record go.
+            watermark[0] = record.timestamp;
+            while (!openEpisodes.isEmpty() && openEpisodes.peek()[0] < watermark[0]) {
+                long[] episode = openEpisodes.poll();
+                int index = (int) episode[1];
+                if (!detector.inEpisode(index)) {
+                    // Closed already, so there's nothing left to check.
+                    continue;
+                }
+                AlertRule rule = rules.rule(StreamKey.code(detector.key(index)));
+                if (detector.endedBefore(index, watermark[0])) {
+                    if (!cooldowns.isSuppressed(index)) {
+                        timed.accept(resolvedAlert(rule, detector, index));
+                    }
+                    detector.close(index);
+                } else {
+                    // More violations moved its end, so check it again then.
+                    episode[0] = detector.episodeEnd(index);
+                    openEpisodes.add(episode);
+                }
+            }
+            while (!holdOffs.isEmpty() && holdOffs.peek()[0] <= watermark[0]) {
+                int index = (int) holdOffs.poll()[1];
+                timed.accept(suppressedSummary(rules.rule(StreamKey.code(detector.key(index))), detector.key(index), cooldowns, index));
+            }
+            WindowStats recordStats = windowStats == null ? null : windowStats.add(record);
+            if (live && recordStats != null && windowStats.snapshotDue(record.sateliteId, record.timestamp, STATS_PERIOD_MILLIS)) {
+                alerts.accept(Alert.health(record.sateliteId, Instant.ofEpochMilli(record.timestamp), windowStats.snapshot(record.sateliteId)));
+            }
+
+            for (AlertRule rule : rules.rulesFor(record.componentCode)) {
+                byte kind = rule.classify(record);
+                if (kind == AlertRule.NONE) {
+                    continue;
+                }
+                int index = detector.index(StreamKey.of(record.sateliteId, (short) rule.id));
+                if (kind == AlertRule.SAMPLE) {
+                    kind = classifySample(trends, anomalies, sequences, index, rule, record.timestamp, record.rawValue, rule.sampleValue(record));
+                }
+                if (detector.applyHysteresis(index, kind)) {
+                    boolean opened = detector.add(index, record.timestamp, record.rawValue, rule);
+                    if (opened) {
+                        // Held back or not, the episode has to be closed when it ends.
+                        openEpisodes.add(new long[] {detector.episodeEnd(index), index});
+                        if (cooldowns.allow(index, record.timestamp, rule.cooldownMillis)) {
+                            timed.accept(newAlert(rule, detector.key(index), detector.alertTimestamp(index), recordStats));
+                        } else if (cooldowns.suppressed(index) == 1) {
+                            // The first alert held back in this hold-off, so its summary is due at the hold-off's end.
+                            holdOffs.add(new long[] {cooldowns.holdOffEnd(index), index});
+                        }
+                    }
+                    if (rule.joined) {
+                        // Episodes that ended a window ago can't overlap any episode still to come.
+                        episodes.forget(index, record.timestamp - rules.maxWindowMillis());
+                        episodes.update(detector, index, opened);
+                        if (opened) {
+                            if (rule.pairs != null) {
+                                joinTandem(rule, detector, episodes, index, timed);
+                            }
+                            for (AlertRule compound : rules.compoundsFor(rule)) {
+                                joinCompound(compound, rule, detector, episodes, index, timed);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+
+        if ("-".equals(input)) {
+            MappedTelemetryReader.read(System.in, onRecord);
+        } else {
+            MappedTelemetryReader.read(Paths.get(input), onRecord);
+        }
+        if (live) {
+            System.err.println(latency.summary("alerts"));
+        }
     }
 
     /**
@@ -189,8 +845,8 @@ public class App
      *   - the actual measured value (rawValue)
      *   - the component name (e.g., BATT or TSTAT)
      */
-    private static class TelemetryRecord {
-        Instant timestamp;  // The exact moment this telemetry reading was recorded.
+    static class TelemetryRecord {
+        long timestamp;  // The exact moment this telemetry reading was recorded, in milliseconds since 1970-01-01 UTC.
         int sateliteId;// The ID of the satellite this data is for (e.g., "1000")
         double redHighLimit;// The "red high" limit. If rawValue exceeds this, it's a serious (red) high violation.
         double yellowHighLimit;// The "yellow high" limit (less severe than red).
@@ -198,76 +854,56 @@ public class App
         double redLowLimit;// The "red low" limit. If rawValue falls below this, it's a serious (red) low violation.
         double rawValue;// The actual measured value at this time.
         String component;// The component name, e.g., "BATT" or "TSTAT".
+        short componentCode;// The component's code, see ComponentCodes.
 
         // Formatter for input timestamps (e.g., "20180101 23:01:05.001")
         private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss.SSS");
 
 
         /**
-         * This method takes a single line of text from the file and creates a TelemetryRecord object from it.
-         * The line is expected to be in the format:
-         *   timestamp|satelliteId|redHighLimit|yellowHighLimit|yellowLowLimit|redLowLimit|rawValue|component
+         * This method converts a timestamp like "20180101 23:01:05.001" to milliseconds since 1970-01-01 UTC.
+         * We first parse it into a LocalDateTime, then convert that to an Instant in UTC (Coordinated Universal Time).
          */
-        static TelemetryRecord parse(String line) {
-            // Split the line into parts, separated by the '|' character.
-            String[] parts = line.split("\\|");
-            // We expect exactly 8 parts. If we don't see 8, it's an error
-            if (parts.length != 8) {
-                throw new IllegalArgumentException("Invalid telemetry record: " + line);
-            }
-
-            // Create a new TelemetryRecord to fill in.
-            TelemetryRecord record = new TelemetryRecord();
-            // Convert the timestamp (e.g., "20180101 23:01:05.001") to a Java Instant.
-            // We first parse it into a LocalDateTime, then convert that to an Instant in UTC (Coordinated Universal Time).
-            LocalDateTime ldt = LocalDateTime.parse(parts[0].trim(), INPUT_FORMATTER);
-            record.timestamp = ldt.atZone(ZoneOffset.UTC).toInstant();
-
-            // Convert each remaining piece of text into the proper data type (numbers, strings, etc.).
-            record.sateliteId = Integer.parseInt(parts[1].trim());
-            record.redHighLimit = Double.parseDouble(parts[2].trim());
-            record.yellowHighLimit = Double.parseDouble(parts[3].trim());
-            record.yellowLowLimit = Double.parseDouble(parts[4].trim());
-            record.redLowLimit = Double.parseDouble(parts[5].trim());
-            record.rawValue = Double.parseDouble(parts[6].trim());
-            record.component = parts[7].trim();
-            return record;
-        }
-
-        /**
-         * This method determines whether this record is a "violation."
-         * For BATT (battery), it's a violation if the rawValue is less than the redLowLimit.
-         * For TSTAT (thermostat), it's a violation if the rawValue is greater than the redHighLimit.
-         */
-        boolean isViolation() {
-            if ("BATT".equals(component)) {
-                // For battery, check if rawValue is below the redLowLimit.
-                return rawValue < redLowLimit;
-            }else if ("TSTAT".equals(component)) {
-                // For thermostat, check if rawValue is above the redHighLimit.
-                return rawValue > redHighLimit;
-            }
-            return false;
+        static long parseTimestamp(CharSequence text) {
+            LocalDateTime ldt = LocalDateTime.parse(text, INPUT_FORMATTER);
+            return ldt.atZone(ZoneOffset.UTC).toInstant().toEpochMilli();
         }
 
-
     }
 
     /**
      * This class represents an "Alert" – a serious event found in the telemetry data.
      * For example, if the battery voltage was too low 3 times in 5 minutes, we create an Alert.
+     *
+     * When the episode behind an alert is over, a second Alert with status "RESOLVED" says so. It has the same
+     * satellite, severity and component, its timestamp is when the episode ended, and it also gives the start,
+     * the end, the duration and the worst raw value of the episode. Those fields are left out of the JSON
+     * of the alert itself.
+     *
+     * Alerts held back by a rule's cooldown are not printed. Instead, once the hold-off is over, an Alert with
+     * status "SUPPRESSED" gives its start and end and how many alerts it held back.
      */
-    private static class Alert {
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Alert {
         int sateliteId;
+        Integer pairedSateliteId;  // For "TANDEM" alerts, the other satellite of the pair.
         String severity;
         String component;
         String timestamp;
+        String status;        // "RESOLVED", "SUPPRESSED", "HEALTH", "TANDEM" or "COMPOUND", or null for the alert itself.
+        String start;         // When the episode started, same as the alert's timestamp.
+        String end;           // When the rule stopped holding.
+        String duration;      // From start to end, e.g. "PT5M1.3S".
+        Double peakRawValue;  // The worst raw value of the episode.
+        Integer suppressed;   // For "SUPPRESSED" summaries, how many alerts a cooldown held back between start and end.
+        WindowStats.Summary stats;  // With --stats, the rolling window stats of the (satellite, component).
+        Map<String, WindowStats.Summary> components;  // For "HEALTH" snapshots, the stats of each component.
 
         /**
          * Construct an Alert with the key information.
          *
          * @param sateliteId The satellite ID.
-         * @param severity   The severity level ("RED LOW" or "RED HIGH").
+         * @param severity   The severity level, e.g. "RED LOW" or "RED HIGH".
          * @param component  The component name (e.g., "BATT").
          * @param timestamp  The time the alert occurred (as an Instant).
          */
@@ -279,12 +915,84 @@ public class App
             this.timestamp = timestamp.toString();
         }
 
+        /**
+         * Builds the RESOLVED message of an episode.
+         *
+         * @param start The time the episode started.
+         * @param end   The time the rule stopped holding.
+         * @param peak  The worst raw value of the episode.
+         */
+        static Alert resolved(int sateliteId, String severity, String component, Instant start, Instant end, double peak) {
+            Alert alert = new Alert(sateliteId, severity, component, end);
+            alert.status = "RESOLVED";
+            alert.start = start.toString();
+            alert.end = end.toString();
+            alert.duration = Duration.between(start, end).toString();
+            alert.peakRawValue = peak;
+            return alert;
+        }
+
+        /**
+         * Builds the summary of the alerts a cooldown held back.
+         *
+         * @param start The time the hold-off started, when the last alert went out.
+         * @param end   The time the hold-off ended.
+         * @param count How many alerts were held back.
+         */
+        static Alert suppressed(int sateliteId, String severity, String component, Instant start, Instant end, int count) {
+            Alert alert = new Alert(sateliteId, severity, component, end);
+            alert.status = "SUPPRESSED";
+            alert.start = start.toString();
+            alert.end = end.toString();
+            alert.suppressed = count;
+            return alert;
+        }
+
+        /**
+         * Builds a HEALTH message, the periodic snapshot of the rolling window stats and time-to-limit
+         * estimates of every component of a satellite. It has no severity and no single component.
+         */
+        static Alert health(int sateliteId, Instant timestamp, Map<String, WindowStats.Summary> components) {
+            Alert alert = new Alert(sateliteId, null, null, timestamp);
+            alert.status = "HEALTH";
+            alert.components = components;
+            return alert;
+        }
+
+        /**
+         * Builds a TANDEM alert, for two satellites of a pair that were both in an episode of the same rule.
+         *
+         * @param timestamp When both of them were in an episode.
+         */
+        static Alert tandem(int sateliteId, int pairedSateliteId, String severity, String component, Instant timestamp) {
+            Alert alert = new Alert(sateliteId, severity, component, timestamp);
+            alert.pairedSateliteId = pairedSateliteId;
+            alert.status = "TANDEM";
+            return alert;
+        }
+
+        /**
+         * Builds a COMPOUND alert, for a satellite with all the components of a COMPOUND rule in an episode at once.
+         *
+         * @param component The components, joined with "+", e.g. "BATT+TSTAT".
+         * @param timestamp When all of them were in an episode.
+         */
+        static Alert compound(int sateliteId, String severity, String component, Instant timestamp) {
+            Alert alert = new Alert(sateliteId, severity, component, timestamp);
+            alert.status = "COMPOUND";
+            return alert;
+        }
+
         // Getter methods allow other parts of the code or JSON serialization to
         // retrieve these values.
         public int getSateliteId() {
             return sateliteId;
         }
 
+        public Integer getPairedSateliteId() {
+            return pairedSateliteId;
+        }
+
         public String getSeverity() {
             return severity;
         }
@@ -296,6 +1004,38 @@ public class App
         public String getTimestamp() {
             return timestamp;
         }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getStart() {
+            return start;
+        }
+
+        public String getEnd() {
+            return end;
+        }
+
+        public String getDuration() {
+            return duration;
+        }
+
+        public Double getPeakRawValue() {
+            return peakRawValue;
+        }
+
+        public Integer getSuppressed() {
+            return suppressed;
+        }
+
+        public WindowStats.Summary getStats() {
+            return stats;
+        }
+
+        public Map<String, WindowStats.Summary> getComponents() {
+            return components;
+        }
     }
 }
 
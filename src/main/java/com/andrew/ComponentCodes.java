@@ -0,0 +1,50 @@
+package com.andrew;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class gives every component name (like "BATT" or "TSTAT") a small number, its "component code".
+ *
+ * Storing a short code per record instead of a String keeps the columnar record store compact,
+ * and comparing two codes is cheaper than comparing two strings. The codes are shared by the whole
+ * program, so records read by different threads always get the same code for the same component.
+ */
+final class ComponentCodes {
+
+    // Name -> code, and code -> name. Only ever grows.
+    private static final Map<String, Short> CODES = new HashMap<>();
+    private static String[] names = new String[16];
+    private static int count;
+
+    private ComponentCodes() {
+    }
+
+    /**
+     * Returns the code for the component, giving it a new one the first time we see it.
+     */
+    static synchronized short codeOf(String name) {
+        Short code = CODES.get(name);
+        if (code != null) {
+            return code;
+        }
+        if (count > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many different components: " + count);
+        }
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+        }
+        short newCode = (short) count;
+        names[count++] = name;
+        CODES.put(name, newCode);
+        return newCode;
+    }
+
+    /**
+     * Returns the component name for a code that {@link #codeOf(String)} handed out.
+     */
+    static synchronized String nameOf(short code) {
+        return names[code];
+    }
+}
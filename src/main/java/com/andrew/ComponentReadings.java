@@ -0,0 +1,187 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class collects every reading of each (satellite, component), keyed by {@link StreamKey} with the component
+ * code, for the batch and parallel paths to replay through the {@link WindowStats} in time order.
+ *
+ * Like {@link ViolationTimestamps} every key gets growable primitive arrays, one per column: the timestamp, the raw
+ * value and the four limits of the record, which the time-to-limit estimates need. The groups come out in the order
+ * their first reading was added.
+ *
+ * Every reading also keeps the sequence of its record, as counted by {@link ViolationTimestamps}. Readings with the
+ * same timestamp as a violation only go into its stats if they were read before it, like on the streaming paths,
+ * and the sequences are what tells them apart once the group is sorted.
+ */
+final class ComponentReadings {
+
+    // The double columns, in the order of the record. The timestamps have their own arrays.
+    private static final int RAW_VALUE = 0;
+    private static final int RED_HIGH = 1;
+    private static final int YELLOW_HIGH = 2;
+    private static final int YELLOW_LOW = 3;
+    private static final int RED_LOW = 4;
+    private static final int COLUMNS = 5;
+
+    private final LongKeyIndex keys = new LongKeyIndex();
+    private long[][] timestamps = new long[16][];
+    private long[][] sequences = new long[16][];
+    // columns[group][column] holds that column of the group.
+    private double[][][] columns = new double[16][][];
+    private int[] counts = new int[16];
+
+    /**
+     * Adds the reading in a record to the group of its (satellite, component).
+     *
+     * @param sequence The sequence of the record.
+     */
+    void add(App.TelemetryRecord record, long sequence) {
+        add(StreamKey.of(record.sateliteId, record.componentCode), record.timestamp, sequence, record.rawValue,
+                record.redHighLimit, record.yellowHighLimit, record.yellowLowLimit, record.redLowLimit);
+    }
+
+    /**
+     * Adds the reading in a row of the batch to the group of its (satellite, component).
+     *
+     * @param sequence The sequence of the record.
+     */
+    void add(TelemetryBatch batch, int row, long sequence) {
+        add(StreamKey.of(batch.satelliteIds[row], batch.components[row]), batch.timestamps[row], sequence, batch.rawValues[row],
+                batch.redHighLimits[row], batch.yellowHighLimits[row], batch.yellowLowLimits[row], batch.redLowLimits[row]);
+    }
+
+    private void add(long key, long timestamp, long sequence, double rawValue, double redHigh, double yellowHigh,
+                     double yellowLow, double redLow) {
+        int group = keys.add(key);
+        if (group == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, group * 2);
+            sequences = Arrays.copyOf(sequences, group * 2);
+            columns = Arrays.copyOf(columns, group * 2);
+            counts = Arrays.copyOf(counts, group * 2);
+        }
+        int count = counts[group];
+        if (timestamps[group] == null) {
+            timestamps[group] = new long[8];
+            sequences[group] = new long[8];
+            columns[group] = new double[COLUMNS][8];
+        } else if (count == timestamps[group].length) {
+            timestamps[group] = Arrays.copyOf(timestamps[group], count * 2);
+            sequences[group] = Arrays.copyOf(sequences[group], count * 2);
+            for (int column = 0; column < COLUMNS; column++) {
+                columns[group][column] = Arrays.copyOf(columns[group][column], count * 2);
+            }
+        }
+        double[][] groupColumns = columns[group];
+        timestamps[group][count] = timestamp;
+        sequences[group][count] = sequence;
+        groupColumns[RAW_VALUE][count] = rawValue;
+        groupColumns[RED_HIGH][count] = redHigh;
+        groupColumns[YELLOW_HIGH][count] = yellowHigh;
+        groupColumns[YELLOW_LOW][count] = yellowLow;
+        groupColumns[RED_LOW][count] = redLow;
+        counts[group] = count + 1;
+    }
+
+    /**
+     * Appends all the readings of another collection, group by group in the other collection's order.
+     *
+     * @param offset What to add to the other collection's sequences: how many records were read before its first one.
+     */
+    void addAll(ComponentReadings other, long offset) {
+        for (int group = 0; group < other.keys.size(); group++) {
+            long key = other.keys.key(group);
+            double[][] otherColumns = other.columns[group];
+            for (int i = 0; i < other.counts[group]; i++) {
+                add(key, other.timestamps[group][i], offset + other.sequences[group][i], otherColumns[RAW_VALUE][i], otherColumns[RED_HIGH][i],
+                        otherColumns[YELLOW_HIGH][i], otherColumns[YELLOW_LOW][i], otherColumns[RED_LOW][i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the group of the key, or -1 if it has none.
+     */
+    int indexOf(long key) {
+        return keys.indexOf(key);
+    }
+
+    /**
+     * Sorts a group's readings by time, keeping readings with the same timestamp in the order they were added.
+     */
+    void sort(int group) {
+        long[] times = timestamps[group];
+        int count = counts[group];
+        for (int i = 1; i < count; i++) {
+            if (times[i] < times[i - 1]) {
+                // Sort the positions, then put every column in that order.
+                int[] order = new int[count];
+                for (int j = 0; j < count; j++) {
+                    order[j] = j;
+                }
+                mergeSort(times, order, new int[count], 0, count);
+                long[] sortedTimes = new long[times.length];
+                long[] sortedSequences = new long[times.length];
+                for (int j = 0; j < count; j++) {
+                    sortedTimes[j] = times[order[j]];
+                    sortedSequences[j] = sequences[group][order[j]];
+                }
+                timestamps[group] = sortedTimes;
+                sequences[group] = sortedSequences;
+                for (int column = 0; column < COLUMNS; column++) {
+                    double[] values = columns[group][column];
+                    double[] sorted = new double[values.length];
+                    for (int j = 0; j < count; j++) {
+                        sorted[j] = values[order[j]];
+                    }
+                    columns[group][column] = sorted;
+                }
+                return;
+            }
+        }
+    }
+
+    // A plain merge sort of the positions in [from, to) by their timestamps. Ties keep their old order.
+    private static void mergeSort(long[] times, int[] order, int[] orderCopy, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(times, order, orderCopy, from, middle);
+        mergeSort(times, order, orderCopy, middle, to);
+        if (times[order[middle - 1]] <= times[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, orderCopy, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < middle && times[orderCopy[left]] <= times[orderCopy[right]])) {
+                order[i] = orderCopy[left++];
+            } else {
+                order[i] = orderCopy[right++];
+            }
+        }
+    }
+
+    int count(int group) {
+        return counts[group];
+    }
+
+    long timestamp(int group, int i) {
+        return timestamps[group][i];
+    }
+
+    long sequence(int group, int i) {
+        return sequences[group][i];
+    }
+
+    /**
+     * Adds the i-th reading of the group to the stats.
+     */
+    void addTo(WindowStats stats, int group, int i) {
+        double[][] groupColumns = columns[group];
+        stats.add(timestamps[group][i], groupColumns[RAW_VALUE][i], groupColumns[RED_HIGH][i], groupColumns[YELLOW_HIGH][i],
+                groupColumns[YELLOW_LOW][i], groupColumns[RED_LOW][i]);
+    }
+}
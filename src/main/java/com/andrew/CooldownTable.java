@@ -0,0 +1,103 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class holds back repeat alerts of a (satellite, rule) that come too soon after the last one that went out.
+ *
+ * When an alert goes out for a rule with a cooldown, its key is "held off" from that moment until the cooldown
+ * has passed. Any new episode that opens in that time is counted instead of being reported, and once the hold-off
+ * is over the count goes out as one summary. Everything is kept in primitive arrays indexed the same way as the
+ * {@link ViolationWindowDetector}'s keys, so the check is a couple of array reads per new episode.
+ *
+ * Times are the timestamps of the violations that opened the episodes, which come in time order per key.
+ */
+final class CooldownTable {
+
+    // The hold-off end of keys that never had an alert held off.
+    private static final long NO_HOLD_OFF = Long.MIN_VALUE;
+
+    // When key i's hold-off started and ends. A new alert before the end is held back.
+    private long[] holdOffStarts = new long[16];
+    private long[] holdOffEnds = new long[16];
+    // How many alerts of key i were held back during its current hold-off.
+    private int[] suppressed = new int[16];
+    // Whether key i's latest episode was held back, so its RESOLVED message is too.
+    private boolean[] episodeSuppressed = new boolean[16];
+
+    CooldownTable() {
+        Arrays.fill(holdOffEnds, NO_HOLD_OFF);
+    }
+
+    /**
+     * Decides whether the alert of a new episode goes out, and starts a new hold-off if it does.
+     *
+     * @param openedAt       The timestamp of the violation that opened the episode.
+     * @param cooldownMillis The rule's cooldown, or 0 to let every alert out.
+     * @return true if the alert goes out, false if it was counted instead.
+     */
+    boolean allow(int index, long openedAt, long cooldownMillis) {
+        if (index >= holdOffEnds.length) {
+            grow(Math.max(index + 1, holdOffEnds.length * 2));
+        }
+        if (openedAt < holdOffEnds[index]) {
+            suppressed[index]++;
+            episodeSuppressed[index] = true;
+            return false;
+        }
+        episodeSuppressed[index] = false;
+        if (cooldownMillis > 0) {
+            holdOffStarts[index] = openedAt;
+            holdOffEnds[index] = openedAt + cooldownMillis;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the key's latest episode was held back.
+     */
+    boolean isSuppressed(int index) {
+        return index < episodeSuppressed.length && episodeSuppressed[index];
+    }
+
+    /**
+     * Returns true if the key held alerts back during a hold-off that is over by the given time,
+     * so its summary can go out and the count can be {@link #takeSuppressed(int) taken}.
+     */
+    boolean summaryDue(int index, long time) {
+        return index < suppressed.length && suppressed[index] > 0 && holdOffEnds[index] <= time;
+    }
+
+    /**
+     * Returns how many alerts the key held back in its current hold-off, and starts counting from 0 again.
+     */
+    int takeSuppressed(int index) {
+        int count = suppressed[index];
+        suppressed[index] = 0;
+        return count;
+    }
+
+    /**
+     * Returns how many alerts the key held back in its current hold-off so far.
+     */
+    int suppressed(int index) {
+        return suppressed[index];
+    }
+
+    long holdOffStart(int index) {
+        return holdOffStarts[index];
+    }
+
+    long holdOffEnd(int index) {
+        return holdOffEnds[index];
+    }
+
+    private void grow(int capacity) {
+        int old = holdOffEnds.length;
+        holdOffStarts = Arrays.copyOf(holdOffStarts, capacity);
+        holdOffEnds = Arrays.copyOf(holdOffEnds, capacity);
+        Arrays.fill(holdOffEnds, old, capacity, NO_HOLD_OFF);
+        suppressed = Arrays.copyOf(suppressed, capacity);
+        episodeSuppressed = Arrays.copyOf(episodeSuppressed, capacity);
+    }
+}
@@ -0,0 +1,86 @@
+package com.andrew;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class parses the short decimal numbers in telemetry lines (like "102.9" or "7.8") straight from bytes.
+ *
+ * A number with at most 15 significant digits and at most 22 digits after the decimal point can be read as a
+ * whole number (the "mantissa", 1029 for "102.9") and a power of ten (10 for "102.9"). Both of those are exact
+ * as doubles, and dividing one exact double by another gives the correctly rounded result. So mantissa / 10^scale
+ * is exactly the double that Double.parseDouble would return, bit for bit, and every limit check
+ * compares the same numbers as before.
+ *
+ * Anything else (exponents like "1e3", long mantissas, "NaN", hex numbers, ...) is handed to Double.parseDouble.
+ */
+final class DecimalParser {
+
+    // Up to 15 digits the mantissa is always below 2^53, so it's exact as a double.
+    private static final int MAX_DIGITS = 15;
+
+    // Powers of ten that are exact as doubles. 10^22 is the biggest one.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    private DecimalParser() {
+    }
+
+    /**
+     * Parses the number in the bytes [from, to) of the buffer.
+     *
+     * @return The same double as {@code Double.parseDouble} returns for that text.
+     */
+    static double parse(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;      // Significant digits in the mantissa (leading zeros don't count).
+        int scale = 0;       // Digits after the decimal point.
+        boolean sawDigit = false;
+        boolean sawPoint = false;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (sawPoint) {
+                    scale++;
+                }
+                if (mantissa == 0 && b == '0') {
+                    // A leading zero doesn't change the mantissa.
+                    continue;
+                }
+                if (++digits > MAX_DIGITS) {
+                    return fallback(buffer, from, to);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+            } else if (b == '.' && !sawPoint) {
+                sawPoint = true;
+            } else {
+                // An exponent, a second point, a letter...
+                return fallback(buffer, from, to);
+            }
+        }
+        if (!sawDigit || scale >= POWERS_OF_TEN.length) {
+            return fallback(buffer, from, to);
+        }
+
+        double value = scale == 0 ? (double) mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static double fallback(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,90 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class remembers the episodes of every (satellite, rule) whose episodes are joined with those of other keys:
+ * rules with tandem pairs, which join two satellites, and rules of the components of a COMPOUND rule, which join
+ * the components of one satellite. It's indexed like the {@link ViolationWindowDetector}.
+ *
+ * A join is reported once per combination of episodes that overlap. Every key keeps the start and end of its
+ * episodes, oldest first, in growable primitive arrays. A key's episodes can overlap a little (a new one can start
+ * with a violation from before the last one ended), but they start and end in time order. So the episodes of a key
+ * that overlap a given time are a run of the latest ones, found by walking back from the end, and the episodes of
+ * two keys can be joined by walking their two lists side by side, like a merge, without comparing every episode
+ * with every other.
+ *
+ * When records come in time order, an episode is joined the moment it opens: whichever episode of a combination
+ * opens last finds the others in their keys' lists, and every episode they have from before it is already over or
+ * still open, so nothing is missed. A new episode never starts more than its rule's window before it opens, so an
+ * episode that ended longer ago than the longest window can't overlap any episode still to come and can be
+ * forgotten (see {@link #forget(int, long)}). That keeps the state per key to the few episodes of the last window.
+ */
+final class EpisodeTable {
+
+    private long[][] starts = new long[16][];
+    private long[][] ends = new long[16][];
+    private int[] counts = new int[16];
+
+    /**
+     * Updates the key's episodes after a violation went into the detector.
+     *
+     * @param opened Whether the violation opened a new episode. If it didn't, it may have made the key's latest
+     *               episode longer.
+     */
+    void update(ViolationWindowDetector detector, int index, boolean opened) {
+        if (index >= counts.length) {
+            int length = Math.max(index + 1, counts.length * 2);
+            starts = Arrays.copyOf(starts, length);
+            ends = Arrays.copyOf(ends, length);
+            counts = Arrays.copyOf(counts, length);
+        }
+        int count = counts[index];
+        if (opened) {
+            if (starts[index] == null) {
+                starts[index] = new long[4];
+                ends[index] = new long[4];
+            } else if (count == starts[index].length) {
+                starts[index] = Arrays.copyOf(starts[index], count * 2);
+                ends[index] = Arrays.copyOf(ends[index], count * 2);
+            }
+            starts[index][count] = detector.alertTimestamp(index);
+            ends[index][count] = detector.episodeEnd(index);
+            counts[index] = count + 1;
+        } else if (count > 0) {
+            // Closed episodes have no end in the detector any more, and an end only ever moves later.
+            ends[index][count - 1] = Math.max(ends[index][count - 1], detector.episodeEnd(index));
+        }
+    }
+
+    /**
+     * Forgets the key's episodes that ended before the given time, oldest first.
+     */
+    void forget(int index, long before) {
+        int count = count(index);
+        int gone = 0;
+        while (gone < count && ends[index][gone] < before) {
+            gone++;
+        }
+        if (gone > 0) {
+            System.arraycopy(starts[index], gone, starts[index], 0, count - gone);
+            System.arraycopy(ends[index], gone, ends[index], 0, count - gone);
+            counts[index] = count - gone;
+        }
+    }
+
+    /**
+     * Returns how many episodes the key has, or 0 for a key (or a detector index) it doesn't know.
+     */
+    int count(int index) {
+        return index >= 0 && index < counts.length ? counts[index] : 0;
+    }
+
+    long start(int index, int episode) {
+        return starts[index][episode];
+    }
+
+    long end(int index, int episode) {
+        return ends[index][episode];
+    }
+}
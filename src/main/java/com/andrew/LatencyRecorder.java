@@ -0,0 +1,99 @@
+package com.andrew;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class collects latencies (in nanoseconds) and summarizes them as min, mean, percentiles and max.
+ *
+ * Keeping every single latency would grow without limit in a long live run, so instead each latency is counted
+ * in a bucket. Buckets are grouped by powers of two and every power of two is split into 16 equal steps, so a
+ * percentile is never off by more than about 6%, and recording one latency is a few shifts and an array increment.
+ */
+final class LatencyRecorder {
+
+    // 4 bits below the leading bit pick one of 16 steps within a power of two.
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] buckets = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records one latency in nanoseconds.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        min = Math.min(min, nanos);
+        max = Math.max(max, nanos);
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Returns (an upper bound of) the latency that the given fraction of recordings were at or below, e.g. 0.99 for p99.
+     */
+    long percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return Math.min(max, upperBound(bucket));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * A one-line summary like "alerts=12 latency min=41us mean=88us p50=80us p99=310us max=402us".
+     */
+    String summary(String what) {
+        if (count == 0) {
+            return what + "=0";
+        }
+        return what + "=" + count
+                + " latency min=" + micros(min)
+                + " mean=" + micros(total / count)
+                + " p50=" + micros(percentile(0.50))
+                + " p99=" + micros(percentile(0.99))
+                + " max=" + micros(max);
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+
+    /**
+     * Small values get a bucket each; bigger ones share a bucket with the values in the same 1/16th of their power of two.
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int step = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + step;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long step = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + step + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
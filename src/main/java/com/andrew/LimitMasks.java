@@ -0,0 +1,87 @@
+package com.andrew;
+
+/**
+ * This class checks a block of rows of a {@link TelemetryBatch} against all four of their limits at once, and keeps
+ * the answers as one bitset per band: bit i of {@code bands[RED_HIGH.ordinal()]} is set when row (from + i) is above its
+ * red high limit, and so on.
+ *
+ * The red bands are past the red limits, and the yellow bands are past the yellow limits but not past the red ones,
+ * which is exactly what a plain LIMIT rule on that side counts as a violation (see {@link AlertRule#classify}).
+ * So for those rules, the ones {@link AlertRule#masked} is set for, a violation is one bit lookup instead of a switch
+ * over the limit and a compare per row and rule. Rules with hysteresis or that look the other way still go through
+ * {@link AlertRule#classify}.
+ *
+ * The scan itself goes straight down the raw value and limit columns with no branches in it: every compare is
+ * worked out from the sign bit of a subtraction (see {@link #below}), a 0 or 1 that is shifted into its word. That
+ * keeps the loop free of mispredicted jumps whatever the data looks like, and gives the JIT a simple loop over
+ * primitive arrays to unroll. The bitsets are kept and reused from one block to the next.
+ */
+final class LimitMasks {
+
+    // How many rows one scan covers. 64 words per band is small enough to stay in the L1 cache.
+    static final int BLOCK_ROWS = 4096;
+
+    // One bitset per band, indexed by the ordinal of its limit.
+    final long[][] bands = new long[AlertRule.Limit.values().length][BLOCK_ROWS / 64];
+    // The first row of the block that was scanned last.
+    private int from;
+
+    /**
+     * Scans the rows from {@code from} up to {@code from + BLOCK_ROWS} or the end of the batch, whichever comes first.
+     */
+    void scan(TelemetryBatch batch, int from) {
+        this.from = from;
+        int to = Math.min(batch.size, from + BLOCK_ROWS);
+        double[] rawValues = batch.rawValues;
+        double[] redHighLimits = batch.redHighLimits;
+        double[] yellowHighLimits = batch.yellowHighLimits;
+        double[] yellowLowLimits = batch.yellowLowLimits;
+        double[] redLowLimits = batch.redLowLimits;
+        long[] redHigh = bands[AlertRule.Limit.RED_HIGH.ordinal()];
+        long[] yellowHigh = bands[AlertRule.Limit.YELLOW_HIGH.ordinal()];
+        long[] yellowLow = bands[AlertRule.Limit.YELLOW_LOW.ordinal()];
+        long[] redLow = bands[AlertRule.Limit.RED_LOW.ordinal()];
+        for (int word = 0, start = from; start < to; word++, start += 64) {
+            int end = Math.min(to, start + 64);
+            long rh = 0;
+            long yh = 0;
+            long yl = 0;
+            long rl = 0;
+            for (int row = start; row < end; row++) {
+                double raw = rawValues[row];
+                int shift = row - start;
+                long aboveRed = below(redHighLimits[row], raw) << shift;
+                long belowRed = below(raw, redLowLimits[row]) << shift;
+                rh |= aboveRed;
+                rl |= belowRed;
+                // Yellow only if it isn't red already.
+                yh |= (below(yellowHighLimits[row], raw) << shift) & ~aboveRed;
+                yl |= (below(raw, yellowLowLimits[row]) << shift) & ~belowRed;
+            }
+            redHigh[word] = rh;
+            yellowHigh[word] = yh;
+            yellowLow[word] = yl;
+            redLow[word] = rl;
+        }
+    }
+
+    /**
+     * Returns 1 if a < b and 0 if not (also when either is NaN), like {@code a < b ? 1 : 0} but without a jump.
+     *
+     * a < b is the same as a - b being negative. Adding 0.0 turns a -0.0 difference into 0.0, and the sign bit of
+     * what's left is the answer, unless it's a NaN, whose bits are above those of infinity once the sign is dropped.
+     */
+    static long below(double a, double b) {
+        long bits = Double.doubleToRawLongBits((a - b) + 0.0);
+        long notNaN = ((0x7FF0000000000000L - (bits & Long.MAX_VALUE)) >>> 63) ^ 1;
+        return (bits >>> 63) & notNaN;
+    }
+
+    /**
+     * Returns whether a row of the last block scanned is past the limit, in the band of that limit.
+     */
+    boolean test(AlertRule.Limit limit, int row) {
+        int i = row - from;
+        return (bands[limit.ordinal()][i >>> 6] & (1L << i)) != 0;
+    }
+}
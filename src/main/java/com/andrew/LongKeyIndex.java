@@ -0,0 +1,121 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class gives each distinct long key a small number (its "index"): 0 for the first key added, 1 for the next, and so on.
+ *
+ * It's a hash map from long to int, but it never boxes anything. The keys live in a plain long array and
+ * collisions are handled by trying the next slot ("open addressing" with linear probing), so looking a key up
+ * touches one or two array entries and creates no garbage. Whatever we want to keep per key can then be stored
+ * in ordinary arrays at the key's index, and walking the indexes from 0 goes through the keys in the order they were added.
+ */
+final class LongKeyIndex {
+
+    // The hash table. A slot holds a key and its index + 1, with 0 meaning the slot is empty.
+    private long[] tableKeys;
+    private int[] tableIndexes;
+    private int mask;
+
+    // The keys in the order they were added, so keys[i] is the key with index i.
+    private long[] keys;
+    private int size;
+
+    LongKeyIndex() {
+        this(16);
+    }
+
+    LongKeyIndex(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedKeys) * 2 - 1) << 1;
+        tableKeys = new long[capacity];
+        tableIndexes = new int[capacity];
+        mask = capacity - 1;
+        keys = new long[Math.max(4, expectedKeys)];
+    }
+
+    /**
+     * Returns the index of the key, or -1 if it hasn't been added.
+     */
+    int indexOf(long key) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int index = tableIndexes[slot];
+            if (index == 0) {
+                return -1;
+            }
+            if (tableKeys[slot] == key) {
+                return index - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the key, adding it with the next free index if it isn't there yet.
+     */
+    int add(long key) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int index = tableIndexes[slot];
+            if (index == 0) {
+                return insert(slot, key);
+            }
+            if (tableKeys[slot] == key) {
+                return index - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the key with the given index.
+     */
+    long key(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns how many keys have been added.
+     */
+    int size() {
+        return size;
+    }
+
+    private int insert(int slot, long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int index = size++;
+        keys[index] = key;
+        tableKeys[slot] = key;
+        tableIndexes[slot] = index + 1;
+        // Keep the table at most half full, so the runs of filled slots stay short.
+        if (size * 2 > tableKeys.length) {
+            rehash(tableKeys.length * 2);
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        tableKeys = new long[capacity];
+        tableIndexes = new int[capacity];
+        mask = capacity - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = hash(keys[index]) & mask;
+            while (tableIndexes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = keys[index];
+            tableIndexes[slot] = index + 1;
+        }
+    }
+
+    /**
+     * Mixes all 64 bits of the key into the low bits, since the table only looks at the low bits
+     * and packed keys differ mostly in their upper half.
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
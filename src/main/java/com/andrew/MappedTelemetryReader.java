@@ -0,0 +1,384 @@
+package com.andrew;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * This class reads telemetry records straight from the bytes of a memory-mapped file.
+ *
+ * Instead of turning every line into a String and splitting it with a regular expression,
+ * it scans the mapped bytes for '|' and '\n' and decodes each field where it sits.
+ * The fields are written into one {@link App.TelemetryRecord} that is reused for every line,
+ * so reading a file does not create garbage for each record.
+ *
+ * Files bigger than what a single mapping can hold (2 GB) are mapped in windows that always
+ * end on a line boundary, so no record is ever split between two windows.
+ */
+final class MappedTelemetryReader {
+
+    // Every telemetry line has exactly 8 pipe-separated fields.
+    static final int FIELD_COUNT = 8;
+
+    // The biggest part of the file we map at once. A single MappedByteBuffer can't be bigger than 2 GB.
+    private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    // How much of a stream we read at once when we can't map it.
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    // The record we fill in for every line and hand to the consumer.
+    private final App.TelemetryRecord record = new App.TelemetryRecord();
+
+    // Where each field starts and ends (end is exclusive) in the current window, for the current line.
+    private final int[] fieldStart = new int[FIELD_COUNT];
+    private final int[] fieldEnd = new int[FIELD_COUNT];
+
+    // Decodes the timestamps, remembering the last day it saw.
+    private final TimestampDecoder timestampDecoder = new TimestampDecoder();
+
+    // Scratch space for the rare fields that have to go through the JDK parsers, and for new component names.
+    private byte[] scratch = new byte[64];
+
+    // Component names we've already seen, so the same String and code are reused instead of creating a new one per line.
+    private byte[][] componentBytes = new byte[8][];
+    private String[] componentNames = new String[8];
+    private short[] componentCodes = new short[8];
+    private int componentCount;
+
+    private MappedTelemetryReader() {
+    }
+
+    /**
+     * Reads every record in the file and passes it to the consumer.
+     * The consumer gets the same record object each time, so it has to copy anything it wants to keep.
+     *
+     * @param path     The path to the file containing telemetry data.
+     * @param consumer Called once for each non-blank line in the file.
+     */
+    static void read(Path path, Consumer<App.TelemetryRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            new MappedTelemetryReader().read(channel, 0, channel.size(), consumer);
+        }
+    }
+
+    /**
+     * Reads records from a stream that can't be memory-mapped, such as a pipe, and passes each one to the consumer
+     * as soon as its line is complete.
+     *
+     * The bytes go into a reusable buffer and are parsed exactly like a mapped window: every complete line is
+     * handed out straight away, and a partial line at the end is kept and finished by the next read. A read
+     * returns whatever has arrived so far, so records don't wait for the buffer to fill up.
+     *
+     * @param in       The stream to read telemetry lines from.
+     * @param consumer Called once for each non-blank line, with the same record object each time.
+     */
+    static void read(InputStream in, Consumer<App.TelemetryRecord> consumer) throws IOException {
+        MappedTelemetryReader reader = new MappedTelemetryReader();
+        byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int filled = 0;
+        int read;
+        while ((read = in.read(bytes, filled, bytes.length - filled)) != -1) {
+            filled += read;
+            // Parse up to the last newline and move the partial line that's left to the front.
+            int limit = lastNewline(buffer, filled) + 1;
+            if (limit > 0) {
+                reader.parseLines(buffer, limit, consumer);
+                System.arraycopy(bytes, limit, bytes, 0, filled - limit);
+                filled -= limit;
+            } else if (filled == bytes.length) {
+                // A single line fills the whole buffer, so make room for the rest of it.
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                buffer = ByteBuffer.wrap(bytes);
+            }
+        }
+        // The last line might not end with a newline.
+        reader.parseLines(buffer, filled, consumer);
+    }
+
+    /**
+     * Reads the records in the byte range [start, end) of the file and passes each one to the consumer.
+     * The range must begin at the start of a line and end at the start of a line (or the end of the file),
+     * like the ranges {@link #split(Path, int)} returns.
+     */
+    static void read(Path path, long start, long end, Consumer<App.TelemetryRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            new MappedTelemetryReader().read(channel, start, end, consumer);
+        }
+    }
+
+    /**
+     * Cuts the file into roughly equal byte ranges that each hold whole lines, so they can be read separately.
+     *
+     * @param path  The path to the file containing telemetry data.
+     * @param parts How many ranges we would like. Small files can end up with some empty ranges.
+     * @return The range boundaries: range i is [boundaries[i], boundaries[i + 1]). The first is 0 and the last is the file size.
+     */
+    static long[] split(Path path, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] boundaries = new long[parts + 1];
+            boundaries[parts] = size;
+            ByteBuffer block = ByteBuffer.allocate(8192);
+            for (int i = 1; i < parts; i++) {
+                // Move each even split point forward to just after the next newline.
+                long guess = Math.max(boundaries[i - 1], size / parts * i);
+                boundaries[i] = guess == 0 ? 0 : nextLineStart(channel, guess, size, block);
+            }
+            return boundaries;
+        }
+    }
+
+    /**
+     * Returns the first position at or after {@code position} where a line starts, or the file size if there isn't one.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer block) throws IOException {
+        // Start one byte early: if that byte is a newline, a line starts right at position.
+        long offset = position - 1;
+        while (offset < size) {
+            block.clear();
+            int read = channel.read(block, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * Reads the records in the byte range [start, end) of the file, one mapped window at a time.
+     * The range must begin at the start of a line.
+     */
+    private void read(FileChannel channel, long start, long end, Consumer<App.TelemetryRecord> consumer) throws IOException {
+        long position = start;
+        while (position < end) {
+            int size = (int) Math.min(MAX_WINDOW_SIZE, end - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+
+            // Unless this is the last window, stop after the last complete line in it.
+            // The rest is picked up by the next window.
+            int limit = size;
+            if (position + size < end) {
+                limit = lastNewline(window, size) + 1;
+                if (limit == 0) {
+                    throw new IOException("Telemetry line longer than " + MAX_WINDOW_SIZE + " bytes at offset " + position);
+                }
+            }
+
+            parseLines(window, limit, consumer);
+            position += limit;
+        }
+    }
+
+    /**
+     * Returns the index of the last '\n' in the first {@code size} bytes of the buffer, or -1 if there isn't one.
+     */
+    private static int lastNewline(ByteBuffer buffer, int size) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Walks the buffer byte by byte, remembering where each field starts and ends,
+     * and parses a record every time a line is complete.
+     *
+     * Checking 8 bytes at once inside a long was tried, but it came out slower than this loop in
+     * DelimiterScanBenchmark (under src/test), so it isn't used.
+     */
+    private void parseLines(ByteBuffer buffer, int limit, Consumer<App.TelemetryRecord> consumer) {
+        int lineStart = 0;
+        int field = 0;
+        fieldStart[0] = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '|') {
+                // A pipe ends the current field and starts the next one.
+                if (field < FIELD_COUNT) {
+                    fieldEnd[field] = i;
+                }
+                field++;
+                if (field < FIELD_COUNT) {
+                    fieldStart[field] = i + 1;
+                }
+            } else if (b == '\n') {
+                // A newline ends the last field and the whole line.
+                parseLine(buffer, lineStart, i, field, consumer);
+                lineStart = i + 1;
+                field = 0;
+                fieldStart[0] = lineStart;
+            }
+        }
+        // The last line of the file might not end with a newline.
+        if (lineStart < limit) {
+            parseLine(buffer, lineStart, limit, field, consumer);
+        }
+    }
+
+    /**
+     * Decodes the fields of one line into the reused record and passes it on.
+     * Blank lines are skipped, like readTelemetryRecords always did.
+     */
+    private void parseLine(ByteBuffer buffer, int lineStart, int lineEnd, int pipes, Consumer<App.TelemetryRecord> consumer) {
+        if (pipes == 0 && trimStart(buffer, lineStart, lineEnd) == lineEnd) {
+            return;
+        }
+        // String.split("\\|") drops the empty fields at the end of a line, so "...|TSTAT|" is still a record of
+        // 8 fields, and "...|99.9|" is one of 7. The '\r' of a Windows line ending was never part of the line either.
+        int end = lineEnd;
+        if (end > lineStart && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        while (end > lineStart && buffer.get(end - 1) == '|') {
+            end--;
+            pipes--;
+        }
+        if (pipes != FIELD_COUNT - 1) {
+            throw new IllegalArgumentException("Invalid telemetry record: " + text(buffer, lineStart, lineEnd));
+        }
+        fieldEnd[FIELD_COUNT - 1] = end;
+
+        // Trim spaces (and the '\r' of Windows line endings) from every field, like String.trim() does.
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            int from = trimStart(buffer, fieldStart[f], fieldEnd[f]);
+            fieldEnd[f] = trimEnd(buffer, from, fieldEnd[f]);
+            fieldStart[f] = from;
+        }
+
+        record.timestamp = timestampDecoder.decode(buffer, fieldStart[0], fieldEnd[0]);
+        record.sateliteId = parseInt(buffer, fieldStart[1], fieldEnd[1]);
+        record.redHighLimit = parseDouble(buffer, fieldStart[2], fieldEnd[2]);
+        record.yellowHighLimit = parseDouble(buffer, fieldStart[3], fieldEnd[3]);
+        record.yellowLowLimit = parseDouble(buffer, fieldStart[4], fieldEnd[4]);
+        record.redLowLimit = parseDouble(buffer, fieldStart[5], fieldEnd[5]);
+        record.rawValue = parseDouble(buffer, fieldStart[6], fieldEnd[6]);
+        int component = component(buffer, fieldStart[7], fieldEnd[7]);
+        record.component = componentNames[component];
+        record.componentCode = componentCodes[component];
+        consumer.accept(record);
+    }
+
+    /**
+     * Parses a whole number such as a satellite id without making a String.
+     * Anything unusual (too many digits, stray characters) is handed to Integer.parseInt,
+     * so it fails or succeeds exactly like it used to.
+     */
+    private int parseInt(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        // Nine digits always fit in an int, so we don't have to check for overflow.
+        if (i == to || to - i > 9) {
+            return Integer.parseInt(string(buffer, from, to));
+        }
+        int value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(string(buffer, from, to));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal number such as a limit or a raw value.
+     */
+    private static double parseDouble(ByteBuffer buffer, int from, int to) {
+        return DecimalParser.parse(buffer, from, to);
+    }
+
+    /**
+     * Returns where the component with the given bytes sits in componentNames and componentCodes.
+     * There are only a handful of different components, so we keep one String per name and look it up by its bytes.
+     */
+    private int component(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        for (int c = 0; c < componentCount; c++) {
+            byte[] name = componentBytes[c];
+            if (name.length == length && matches(buffer, from, name)) {
+                return c;
+            }
+        }
+
+        // First time this reader sees this component, so remember it.
+        if (componentCount == componentNames.length) {
+            componentBytes = Arrays.copyOf(componentBytes, componentCount * 2);
+            componentNames = Arrays.copyOf(componentNames, componentCount * 2);
+            componentCodes = Arrays.copyOf(componentCodes, componentCount * 2);
+        }
+        String name = string(buffer, from, to);
+        componentBytes[componentCount] = name.getBytes(StandardCharsets.US_ASCII);
+        componentNames[componentCount] = name;
+        componentCodes[componentCount] = ComponentCodes.codeOf(name);
+        return componentCount++;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int from, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(from + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int trimStart(ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int from, int to) {
+        while (to > from && buffer.get(to - 1) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * Copies the bytes into the scratch array and makes a String out of them.
+     */
+    private String string(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(from + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Makes a String for error messages only.
+     */
+    private static String text(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,277 @@
+package com.andrew;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class holds the alert rules, compiled into a table that is indexed by component code.
+ *
+ * The rules are read once at startup, from the file given with --rules or from the built-in rules.json
+ * (BATT below its red and yellow low limits, TSTAT above its red and yellow high limits, 3 violations in
+ * 5 minutes). Every rule gets an id, its position in the file, which is what the detectors key their state
+ * on together with the satellite id. For each record, {@link #rulesFor(short)} is a single array lookup by the record's
+ * component code, so no strings are compared and components without rules cost almost nothing.
+ * All the red and yellow rules of a record are checked right there, in the same single pass over the input.
+ * COMPOUND rules have no readings of their own and are never returned by it; {@link #compoundsFor(AlertRule)} finds
+ * the ones a rule's episodes count for instead.
+ */
+final class RuleTable {
+
+    private static final AlertRule[] NO_RULES = new AlertRule[0];
+
+    private final AlertRule[] rules;
+    // byComponent[code] holds the rules for that component code, in file order.
+    private final AlertRule[][] byComponent;
+    // statsWindows[code] is the longest window of that component's rules, or -1 if it has none.
+    private final long[] statsWindows;
+    // compounds[id] holds the COMPOUND rules that the episodes of the rule with that id count for.
+    private final AlertRule[][] compounds;
+    private final int maxCount;
+    private final long maxWindowMillis;
+
+    private RuleTable(List<AlertRule> rules) {
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("No alert rules were given");
+        }
+        if (rules.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many alert rules: " + rules.size());
+        }
+        this.rules = rules.toArray(new AlertRule[0]);
+
+        int maxCode = 0;
+        int maxCount = 1;
+        long maxWindowMillis = 0;
+        for (int id = 0; id < this.rules.length; id++) {
+            AlertRule rule = this.rules[id];
+            check(rule);
+            rule.id = id;
+            if (rule.type == AlertRule.Type.COMPOUND) {
+                // A compound rule has no readings of its own, only the components it joins.
+                rule.componentCodes = new short[rule.components.length];
+                for (int i = 0; i < rule.components.length; i++) {
+                    rule.componentCodes[i] = ComponentCodes.codeOf(rule.components[i]);
+                    maxCode = Math.max(maxCode, rule.componentCodes[i]);
+                }
+                continue;
+            }
+            rule.componentCode = ComponentCodes.codeOf(rule.component);
+            rule.windowMillis = rule.windowSeconds * 1000;
+            rule.cooldownMillis = rule.cooldownSeconds * 1000;
+            rule.leadMillis = rule.leadSeconds * 1000;
+            rule.baselineMillis = rule.baselineSeconds * 1000;
+            rule.withinMillis = rule.withinSeconds * 1000;
+            if (rule.direction == null) {
+                // A sequence rule's peak is the highest reading if it ends up high, the lowest if it ends up low.
+                AlertRule.Band last = rule.sequence[rule.sequence.length - 1];
+                boolean low = last == AlertRule.Band.YELLOW_LOW || last == AlertRule.Band.RED_LOW;
+                rule.direction = low ? AlertRule.Direction.BELOW : AlertRule.Direction.ABOVE;
+            }
+            // A trend towards a yellow limit is worth knowing about even if the readings are red already.
+            rule.redLimit = rule.type == AlertRule.Type.LIMIT ? rule.limit.redLimit(rule.direction) : null;
+            // Entering is further past the limit, exiting is further back from it.
+            double sign = rule.direction == AlertRule.Direction.ABOVE ? 1 : -1;
+            rule.enterOffset = sign * rule.enterMargin;
+            rule.exitOffset = -sign * rule.exitMargin;
+            rule.hysteresis = rule.enterMargin != 0 || rule.exitMargin != 0;
+            // A rule looking the other way from its limit (RED_HIGH, BELOW) isn't one of the bands.
+            boolean high = rule.limit == AlertRule.Limit.RED_HIGH || rule.limit == AlertRule.Limit.YELLOW_HIGH;
+            rule.masked = rule.type == AlertRule.Type.LIMIT && !rule.hysteresis
+                    && rule.direction == (high ? AlertRule.Direction.ABOVE : AlertRule.Direction.BELOW);
+            if (rule.pairs != null) {
+                indexPairs(rule);
+            }
+            maxCode = Math.max(maxCode, rule.componentCode);
+            maxCount = Math.max(maxCount, rule.count);
+            maxWindowMillis = Math.max(maxWindowMillis, rule.windowMillis);
+            rule.joined = rule.pairs != null;
+        }
+        this.maxCount = maxCount;
+        this.maxWindowMillis = maxWindowMillis;
+
+        byComponent = new AlertRule[maxCode + 1][];
+        Arrays.fill(byComponent, NO_RULES);
+        statsWindows = new long[maxCode + 1];
+        Arrays.fill(statsWindows, -1);
+        compounds = new AlertRule[this.rules.length][];
+        Arrays.fill(compounds, NO_RULES);
+        for (AlertRule rule : this.rules) {
+            if (rule.type != AlertRule.Type.COMPOUND) {
+                byComponent[rule.componentCode] = append(byComponent[rule.componentCode], rule);
+                statsWindows[rule.componentCode] = Math.max(statsWindows[rule.componentCode], rule.windowMillis);
+            }
+        }
+        for (AlertRule compound : this.rules) {
+            if (compound.type != AlertRule.Type.COMPOUND) {
+                continue;
+            }
+            compound.componentRules = new AlertRule[compound.componentCodes.length][];
+            for (int position = 0; position < compound.componentCodes.length; position++) {
+                AlertRule[] red = NO_RULES;
+                for (AlertRule rule : byComponent[compound.componentCodes[position]]) {
+                    if (rule.type == AlertRule.Type.LIMIT && (rule.limit == AlertRule.Limit.RED_HIGH || rule.limit == AlertRule.Limit.RED_LOW)) {
+                        red = append(red, rule);
+                        compounds[rule.id] = append(compounds[rule.id], compound);
+                        rule.joined = true;
+                    }
+                }
+                if (red.length == 0) {
+                    throw new IllegalArgumentException("Compound rule names a component without red limit rules: " + compound);
+                }
+                compound.componentRules[position] = red;
+            }
+        }
+    }
+
+    private static AlertRule[] append(AlertRule[] list, AlertRule rule) {
+        list = Arrays.copyOf(list, list.length + 1);
+        list[list.length - 1] = rule;
+        return list;
+    }
+
+    /**
+     * Reads the rules from a JSON file: an array of objects with component, limit, direction, count and windowSeconds.
+     */
+    static RuleTable load(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Returns the built-in rules from rules.json.
+     */
+    static RuleTable defaults() throws IOException {
+        try (InputStream in = RuleTable.class.getResourceAsStream("/rules.json")) {
+            if (in == null) {
+                throw new IOException("The built-in rules.json is missing");
+            }
+            return read(in);
+        }
+    }
+
+    static RuleTable of(AlertRule... rules) {
+        return new RuleTable(new ArrayList<>(Arrays.asList(rules)));
+    }
+
+    private static RuleTable read(InputStream in) throws IOException {
+        List<AlertRule> rules = new ObjectMapper().readValue(in, new TypeReference<List<AlertRule>>() { });
+        return new RuleTable(rules);
+    }
+
+    private static void check(AlertRule rule) {
+        if (rule.type == AlertRule.Type.COMPOUND) {
+            if (rule.components == null || rule.components.length < 2
+                    || new HashSet<>(Arrays.asList(rule.components)).size() != rule.components.length
+                    || Arrays.asList(rule.components).contains(null)) {
+                throw new IllegalArgumentException("Compound rule needs two or more different components: " + rule);
+            }
+            return;
+        }
+        // A sequence rule's bands say which way it goes, so it needs neither a limit nor a direction.
+        if (rule.type == null || rule.component == null || (rule.direction == null && rule.type != AlertRule.Type.SEQUENCE)
+                || (rule.limit == null && (rule.type == AlertRule.Type.LIMIT || rule.type == AlertRule.Type.TREND))) {
+            throw new IllegalArgumentException("Alert rule needs a type, a component, a limit and a direction: " + rule);
+        }
+        if (rule.count < 1 || rule.windowSeconds < 0 || rule.cooldownSeconds < 0) {
+            throw new IllegalArgumentException("Alert rule needs a count of at least 1, and a window and cooldown of 0 seconds or more: " + rule);
+        }
+        if (!(rule.enterMargin >= 0) || !(rule.exitMargin >= 0)) {
+            throw new IllegalArgumentException("Alert rule margins can't be negative: " + rule);
+        }
+        if (rule.type == AlertRule.Type.TREND && (rule.leadSeconds <= 0 || rule.windowSeconds <= 0)) {
+            throw new IllegalArgumentException("Trend rule needs a lead time and a window of more than 0 seconds: " + rule);
+        }
+        if (rule.type == AlertRule.Type.ANOMALY && (!(rule.sigmas > 0) || rule.baselineSeconds <= 0)) {
+            throw new IllegalArgumentException("Anomaly rule needs more than 0 sigmas and a baseline of more than 0 seconds: " + rule);
+        }
+        if (rule.type == AlertRule.Type.SEQUENCE) {
+            boolean valid = rule.sequence != null && rule.sequence.length >= 2 && rule.withinSeconds > 0;
+            for (int i = 0; valid && i < rule.sequence.length; i++) {
+                // A band right after itself would just be the same step again.
+                valid = rule.sequence[i] != null && (i == 0 || rule.sequence[i] != rule.sequence[i - 1]);
+            }
+            if (!valid) {
+                throw new IllegalArgumentException("Sequence rule needs two or more bands, each different from the one before,"
+                        + " and a time of more than 0 seconds: " + rule);
+            }
+        }
+        if (rule.pairs != null) {
+            for (int[] pair : rule.pairs) {
+                if (pair == null || pair.length != 2 || pair[0] == pair[1]) {
+                    throw new IllegalArgumentException("Alert rule pairs need two different satellite ids each: " + rule);
+                }
+            }
+        }
+    }
+
+    // Lists the pairs of every satellite in the rule's pairs, so a satellite's partners are one lookup away.
+    private static void indexPairs(AlertRule rule) {
+        rule.pairedSatellites = new LongKeyIndex();
+        rule.pairsBySatellite = new int[rule.pairs.length * 2][];
+        for (int position = 0; position < rule.pairs.length; position++) {
+            for (int satelliteId : rule.pairs[position]) {
+                int satellite = rule.pairedSatellites.add(satelliteId);
+                int[] positions = rule.pairsBySatellite[satellite];
+                positions = positions == null ? new int[1] : Arrays.copyOf(positions, positions.length + 1);
+                positions[positions.length - 1] = position;
+                rule.pairsBySatellite[satellite] = positions;
+            }
+        }
+    }
+
+    /**
+     * Returns the rules for a component code, or an empty array if it has none.
+     */
+    AlertRule[] rulesFor(short componentCode) {
+        return componentCode < byComponent.length ? byComponent[componentCode] : NO_RULES;
+    }
+
+    /**
+     * Returns how long the rolling stats of a component look back, the longest window of its rules,
+     * or -1 if the component has no rules.
+     */
+    long statsWindowMillis(short componentCode) {
+        return componentCode < statsWindows.length ? statsWindows[componentCode] : -1;
+    }
+
+    /**
+     * Returns the COMPOUND rules the rule's episodes count for, or an empty array if there are none.
+     */
+    AlertRule[] compoundsFor(AlertRule rule) {
+        return compounds[rule.id];
+    }
+
+    /**
+     * Returns the rule with the given id.
+     */
+    AlertRule rule(int id) {
+        return rules[id];
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    /**
+     * Returns the biggest count of any rule, which is how long the detector's rings have to be.
+     */
+    int maxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Returns the longest window of any rule, which is as far back as an episode can start before it opens.
+     */
+    long maxWindowMillis() {
+        return maxWindowMillis;
+    }
+}
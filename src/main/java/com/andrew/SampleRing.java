@@ -0,0 +1,65 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class is a growable ring of (timestamp, raw value) pairs that can be used as a queue or as a deque.
+ * The sliding windows use it to remember the readings they still have to take out again, without a node
+ * or a boxed value per reading.
+ */
+final class SampleRing {
+
+    private long[] times = new long[8];
+    private double[] values = new double[8];
+    private int head;
+    int size;
+
+    void addLast(long time, double value) {
+        if (size == times.length) {
+            grow();
+        }
+        int slot = (head + size) & (times.length - 1);
+        times[slot] = time;
+        values[slot] = value;
+        size++;
+    }
+
+    long firstTime() {
+        return times[head];
+    }
+
+    double firstValue() {
+        return values[head];
+    }
+
+    long lastTime() {
+        return times[(head + size - 1) & (times.length - 1)];
+    }
+
+    double lastValue() {
+        return values[(head + size - 1) & (times.length - 1)];
+    }
+
+    void removeFirst() {
+        head = (head + 1) & (times.length - 1);
+        size--;
+    }
+
+    void removeLast() {
+        size--;
+    }
+
+    // Doubles the arrays and moves the ring so it starts at 0 again. The length stays a power of two.
+    private void grow() {
+        long[] newTimes = Arrays.copyOf(times, times.length * 2);
+        double[] newValues = Arrays.copyOf(values, values.length * 2);
+        int tail = times.length - head;
+        System.arraycopy(times, head, newTimes, 0, tail);
+        System.arraycopy(times, 0, newTimes, tail, head);
+        System.arraycopy(values, head, newValues, 0, tail);
+        System.arraycopy(values, 0, newValues, tail, head);
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,71 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class matches the readings of every (satellite, SEQUENCE rule) against the rule's pattern, for
+ * {@link AlertRule.Type#SEQUENCE} rules. It's indexed like the {@link ViolationWindowDetector}.
+ *
+ * A pattern such as [YELLOW_HIGH, RED_HIGH] within 120 seconds works like a small state machine (an NFA): a reading
+ * in the first band starts a match, every reading in the band of the step a match is at keeps it there, a reading
+ * in the band of the next step moves it on, and any other reading (the value recovering, or skipping a step) ends
+ * it. So does going on for longer than the rule's time since the match started. A match that gets through every
+ * step is a violation.
+ *
+ * Lots of matches can be going on at once, but all of the ones at the same step go the same way from then on, so
+ * only the one that started last is worth keeping: it has the most time left. That means a key only needs one start
+ * time per step but the last, in a long[], however many readings it has. Readings of a key have to be passed in time order.
+ */
+final class SequenceTable {
+
+    // The start time of a step that has no match at it.
+    private static final long NONE = Long.MIN_VALUE;
+
+    // starts[index][i] is when the latest match that has got through steps 0 to i started, or NONE.
+    private long[][] starts = new long[16][];
+
+    /**
+     * Adds a reading of the key with the given index, and returns whether it completes the rule's pattern:
+     * {@link AlertRule#ENTER} if it does, {@link AlertRule#CLEAR} if it doesn't.
+     *
+     * @param band The ordinal of the reading's {@link AlertRule.Band}, see {@link AlertRule#sampleValue}.
+     */
+    byte classify(int index, AlertRule rule, long timestamp, int band) {
+        if (index >= starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(index + 1, starts.length * 2));
+        }
+        long[] steps = starts[index];
+        if (steps == null) {
+            steps = new long[rule.sequence.length - 1];
+            Arrays.fill(steps, NONE);
+            starts[index] = steps;
+        }
+
+        AlertRule.Band reading = AlertRule.Band.of(band);
+        byte kind = AlertRule.CLEAR;
+        // From the last step back, so a match that moves on isn't moved again by the same reading.
+        for (int i = steps.length - 1; i >= 0; i--) {
+            long start = steps[i];
+            if (start == NONE) {
+                continue;
+            }
+            steps[i] = NONE;
+            if (timestamp - start > rule.withinMillis) {
+                continue;
+            }
+            if (reading == rule.sequence[i + 1]) {
+                if (i + 1 == steps.length) {
+                    kind = AlertRule.ENTER;
+                } else {
+                    steps[i + 1] = Math.max(steps[i + 1], start);
+                }
+            } else if (reading == rule.sequence[i]) {
+                steps[i] = start;
+            }
+        }
+        if (reading == rule.sequence[0]) {
+            steps[0] = Math.max(steps[0], timestamp);
+        }
+        return kind;
+    }
+}
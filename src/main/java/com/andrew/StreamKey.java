@@ -0,0 +1,26 @@
+package com.andrew;
+
+/**
+ * This class packs a satellite id and a 16-bit code (a component code or an alert rule id) into a single long,
+ * and unpacks it again.
+ *
+ * The satellite id goes in the upper 32 bits and the code in the lower 16, so every pair
+ * gets its own number without building a String like "1000_BATT" for every record.
+ */
+final class StreamKey {
+
+    private StreamKey() {
+    }
+
+    static long of(int satelliteId, short code) {
+        return ((long) satelliteId << 32) | (code & 0xFFFFL);
+    }
+
+    static int satelliteId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static short code(long key) {
+        return (short) key;
+    }
+}
@@ -0,0 +1,69 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class stores many telemetry records as columns instead of as separate objects.
+ *
+ * Record number i is made up of timestamps[i], satelliteIds[i], components[i], and so on.
+ * Compared to a List of {@link App.TelemetryRecord} objects there are no per-record object headers,
+ * no pointers and no String or Instant per record, just a handful of primitive arrays. That keeps
+ * 100 million records in a fraction of the memory and gives the garbage collector nothing to scan.
+ */
+final class TelemetryBatch {
+
+    long[] timestamps;       // Epoch milliseconds.
+    int[] satelliteIds;
+    short[] components;      // Component codes, see ComponentCodes.
+    double[] redHighLimits;
+    double[] yellowHighLimits;
+    double[] yellowLowLimits;
+    double[] redLowLimits;
+    double[] rawValues;
+    int size;
+
+    TelemetryBatch() {
+        this(1024);
+    }
+
+    TelemetryBatch(int capacity) {
+        timestamps = new long[capacity];
+        satelliteIds = new int[capacity];
+        components = new short[capacity];
+        redHighLimits = new double[capacity];
+        yellowHighLimits = new double[capacity];
+        yellowLowLimits = new double[capacity];
+        redLowLimits = new double[capacity];
+        rawValues = new double[capacity];
+    }
+
+    /**
+     * Copies the values of a record into the next row.
+     */
+    void add(App.TelemetryRecord record) {
+        if (size == timestamps.length) {
+            grow(size + 1);
+        }
+        timestamps[size] = record.timestamp;
+        satelliteIds[size] = record.sateliteId;
+        components[size] = record.componentCode;
+        redHighLimits[size] = record.redHighLimit;
+        yellowHighLimits[size] = record.yellowHighLimit;
+        yellowLowLimits[size] = record.yellowLowLimit;
+        redLowLimits[size] = record.redLowLimit;
+        rawValues[size] = record.rawValue;
+        size++;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, timestamps.length + (timestamps.length >> 1) + 16);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        satelliteIds = Arrays.copyOf(satelliteIds, capacity);
+        components = Arrays.copyOf(components, capacity);
+        redHighLimits = Arrays.copyOf(redHighLimits, capacity);
+        yellowHighLimits = Arrays.copyOf(yellowHighLimits, capacity);
+        yellowLowLimits = Arrays.copyOf(yellowLowLimits, capacity);
+        redLowLimits = Arrays.copyOf(redLowLimits, capacity);
+        rawValues = Arrays.copyOf(rawValues, capacity);
+    }
+}
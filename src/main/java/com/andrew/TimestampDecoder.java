@@ -0,0 +1,136 @@
+package com.andrew;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class turns a telemetry timestamp like "20180101 23:01:05.001" into milliseconds since 1970-01-01 UTC.
+ *
+ * The timestamp always has the same fixed layout ("yyyyMMdd HH:mm:ss.SSS", 21 characters), so instead of
+ * running the general DateTimeFormatter machinery we read the digits at their known positions and do the
+ * arithmetic ourselves. Records in a file almost always share the same day as the record before them,
+ * so we also remember the date part of the last timestamp and only work out the day again when it changes.
+ *
+ * Anything that doesn't look exactly like a normal timestamp (wrong length, a month 13, February 30, ...)
+ * is handed to {@link App.TelemetryRecord#parseTimestamp(CharSequence)}, so it is resolved or rejected
+ * exactly like it always was.
+ */
+final class TimestampDecoder {
+
+    // "yyyyMMdd HH:mm:ss.SSS"
+    static final int LENGTH = 21;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    // Days in each month of a normal (non-leap) year, January first.
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    // The raw 8 bytes of the last "yyyyMMdd" we decoded, and the epoch milliseconds at the start of that day.
+    // We start with 1970-01-01, which is day 0, so the cache never holds a date we haven't checked.
+    // The file reader's buffers are big-endian, like ByteBuffer.wrap, so the bytes compare the same way.
+    private long cachedDateBytes = ByteBuffer.wrap("19700101".getBytes(StandardCharsets.US_ASCII)).getLong();
+    private long cachedDayMillis = 0;
+
+    /**
+     * Decodes the timestamp in the bytes [from, to) of the buffer.
+     *
+     * @return The timestamp in milliseconds since 1970-01-01 UTC.
+     */
+    long decode(ByteBuffer buffer, int from, int to) {
+        if (to - from != LENGTH) {
+            return fallback(buffer, from, to);
+        }
+
+        // The first 8 bytes are the date. If they are the same as last time, so is the start of the day.
+        long dateBytes = buffer.getLong(from);
+        long dayMillis;
+        if (dateBytes == cachedDateBytes) {
+            dayMillis = cachedDayMillis;
+        } else {
+            long epochDay = epochDay(buffer, from);
+            if (epochDay == Long.MIN_VALUE) {
+                return fallback(buffer, from, to);
+            }
+            dayMillis = epochDay * MILLIS_PER_DAY;
+            cachedDateBytes = dateBytes;
+            cachedDayMillis = dayMillis;
+        }
+
+        // The separators have to be exactly where we expect them.
+        if (buffer.get(from + 8) != ' ' || buffer.get(from + 11) != ':'
+                || buffer.get(from + 14) != ':' || buffer.get(from + 17) != '.') {
+            return fallback(buffer, from, to);
+        }
+        int hour = digits(buffer, from + 9, 2);
+        int minute = digits(buffer, from + 12, 2);
+        int second = digits(buffer, from + 15, 2);
+        int millis = digits(buffer, from + 18, 3);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return fallback(buffer, from, to);
+        }
+
+        return dayMillis + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    /**
+     * Works out the number of days since 1970-01-01 for the "yyyyMMdd" that starts at {@code from}.
+     * Returns Long.MIN_VALUE if it isn't a real calendar date, so the caller can fall back to the formatter.
+     */
+    private static long epochDay(ByteBuffer buffer, int from) {
+        int year = digits(buffer, from, 4);
+        int month = digits(buffer, from + 4, 2);
+        int day = digits(buffer, from + 6, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Counts the days from 1970-01-01 to the given date in the proleptic Gregorian calendar
+     * (the same calendar java.time uses).
+     *
+     * The trick is to start the year in March, so the leap day is the last day of the year
+     * and every month before it has a fixed length. Then the days are counted in whole
+     * 400-year cycles of 146097 days, plus the years and days left over.
+     */
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        // 719468 is the number of days from 0000-03-01 to 1970-01-01.
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Reads {@code count} decimal digits starting at {@code from}, or returns -1 if any of them isn't a digit.
+     */
+    private static int digits(ByteBuffer buffer, int from, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = buffer.get(from + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static long fallback(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return App.TelemetryRecord.parseTimestamp(new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
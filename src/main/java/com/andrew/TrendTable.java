@@ -0,0 +1,121 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class follows the trend of the readings of every (satellite, TREND rule), for
+ * {@link AlertRule.Type#TREND} rules. It's indexed like the {@link ViolationWindowDetector}.
+ *
+ * For every key it keeps a least-squares line through its readings in the rule's window. The line only needs the
+ * means of the times and the raw values and two running sums of products (kept Welford's way, so they stay accurate
+ * with epoch timestamps): a reading is added to them when it arrives and taken out again when it leaves the window,
+ * so the slope is known after every reading without going over the window again. The readings in the window are
+ * kept in a ring for that.
+ *
+ * A reading is a violation when the line, carried on from the reading for the rule's lead time, ends up past the
+ * limit while the reading itself isn't past it yet, i.e. the limit will be crossed soon if things go on like this.
+ * Readings of a key have to be passed in time order.
+ */
+final class TrendTable {
+
+    private TrendLine[] lines = new TrendLine[16];
+
+    /**
+     * Adds a reading of the key with the given index, and returns whether it's a violation of the trend rule:
+     * {@link AlertRule#ENTER} if it is, {@link AlertRule#CLEAR} if it isn't.
+     *
+     * @param limitValue The value of the rule's limit in the reading's record.
+     */
+    byte classify(int index, AlertRule rule, long timestamp, double rawValue, double limitValue) {
+        if (index >= lines.length) {
+            lines = Arrays.copyOf(lines, Math.max(index + 1, lines.length * 2));
+        }
+        TrendLine line = lines[index];
+        if (line == null) {
+            line = lines[index] = new TrendLine(timestamp);
+        }
+        line.add(timestamp, rawValue, rule.windowMillis);
+
+        if (rule.crosses(rawValue, limitValue) || !line.hasSlope()) {
+            // Past the limit already is for the limit rules, and one reading (or one moment) has no trend.
+            return AlertRule.CLEAR;
+        }
+        return rule.crosses(line.valueAt(timestamp + rule.leadMillis), limitValue) ? AlertRule.ENTER : AlertRule.CLEAR;
+    }
+
+    /**
+     * Returns the slope of the key's line through its window, in raw value units per second, or NaN if it has none.
+     */
+    double slope(int index) {
+        TrendLine line = index < lines.length ? lines[index] : null;
+        return line != null && line.hasSlope() ? line.slope() : Double.NaN;
+    }
+
+    // The least-squares line through the readings of one key in its window.
+    private static final class TrendLine {
+        // Times are seconds since the key's first reading, which keeps the numbers small.
+        private final long origin;
+        private final SampleRing readings = new SampleRing();
+        private double meanTime;
+        private double meanValue;
+        // The sums of (time - meanTime)^2 and of (time - meanTime) * (value - meanValue) over the window.
+        private double timeSquares;
+        private double products;
+
+        TrendLine(long origin) {
+            this.origin = origin;
+        }
+
+        void add(long timestamp, double rawValue, long windowMillis) {
+            long oldest = timestamp - windowMillis;
+            while (readings.size > 0 && readings.firstTime() < oldest) {
+                remove(seconds(readings.firstTime()), readings.firstValue());
+                readings.removeFirst();
+            }
+            readings.addLast(timestamp, rawValue);
+            double time = seconds(timestamp);
+            int n = readings.size;
+            double timeDifference = time - meanTime;
+            meanTime += timeDifference / n;
+            meanValue += (rawValue - meanValue) / n;
+            timeSquares += timeDifference * (time - meanTime);
+            products += timeDifference * (rawValue - meanValue);
+        }
+
+        // Welford's update run backwards, for a reading leaving the window. The ring still holds it.
+        private void remove(double time, double rawValue) {
+            int n = readings.size - 1;
+            if (n == 0) {
+                meanTime = 0;
+                meanValue = 0;
+                timeSquares = 0;
+                products = 0;
+                return;
+            }
+            double timeDifference = time - meanTime;
+            double valueDifference = rawValue - meanValue;
+            meanTime -= timeDifference / n;
+            meanValue -= valueDifference / n;
+            timeSquares = Math.max(0, timeSquares - timeDifference * (time - meanTime));
+            products -= (time - meanTime) * valueDifference;
+        }
+
+        // A line needs readings from at least two different moments.
+        boolean hasSlope() {
+            return readings.size >= 2 && readings.firstTime() < readings.lastTime();
+        }
+
+        double slope() {
+            return products / timeSquares;
+        }
+
+        // Where the line is at the given time.
+        double valueAt(long timestamp) {
+            return meanValue + slope() * (seconds(timestamp) - meanTime);
+        }
+
+        private double seconds(long timestamp) {
+            return (timestamp - origin) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class collects the violations of each (satellite, rule), keyed by {@link StreamKey}.
+ *
+ * Every key gets a growable long array of epoch milliseconds and a matching double array of raw values, so
+ * grouping a violation costs one lookup in a {@link LongKeyIndex} and two array writes: no key String, no boxed
+ * Long, no list node. The groups come out in the order their first violation was added.
+ *
+ * For rules with hysteresis the readings that don't break the limit on their own matter too, so every sample
+ * also keeps what it means for its rule (see {@link AlertRule#classify}), and the detector sorts out which
+ * ones are violations once the group is in time order. For those rules a group starts at the first reading
+ * that isn't {@link AlertRule#NONE}. A run of {@link AlertRule#CLEAR} readings only needs its first one, so the
+ * others are dropped once the group is sorted. That can't be done any earlier: in a file that isn't in time order,
+ * a violation that comes later in the file can land in the middle of the run, and then the CLEAR right after it
+ * is the one that ends it. TREND, ANOMALY and SEQUENCE rules need every reading ({@link AlertRule#SAMPLE}),
+ * and some of them one more number from its record as well (see {@link AlertRule#sampleValue}), which only
+ * their groups keep.
+ *
+ * It also remembers the latest timestamp of any record that was read, violation or not (the "watermark"),
+ * which tells us up to when the telemetry shows that an alert has cleared, and how many records were read.
+ * When it's asked to, it keeps the number of the record every reading came from as well (its sequence, counting
+ * from 0 in the order they were read), so readings with the same timestamp can still be told apart by which one
+ * came first. The rolling stats need that to stop at a violation's own record (see {@link ComponentReadings}).
+ */
+final class ViolationTimestamps {
+
+    // The watermark before any record was seen.
+    static final long NO_RECORDS = Long.MIN_VALUE;
+
+    private final LongKeyIndex keys = new LongKeyIndex();
+    private long[][] timestamps = new long[16][];
+    private double[][] values = new double[16][];
+    private byte[][] kinds = new byte[16][];
+    private double[][] samples = new double[16][];
+    // Only kept if the constructor was asked to.
+    private long[][] sequences;
+    private int[] counts = new int[16];
+    private long watermark = NO_RECORDS;
+    private long records;
+
+    ViolationTimestamps() {
+        this(false);
+    }
+
+    /**
+     * @param sequenced Whether to keep the sequence of the record every reading came from.
+     */
+    ViolationTimestamps(boolean sequenced) {
+        sequences = sequenced ? new long[16][] : null;
+    }
+
+    /**
+     * Adds one violation to the group of the given key.
+     */
+    void add(long key, long timestamp, double rawValue) {
+        add(key, timestamp, rawValue, AlertRule.ENTER);
+    }
+
+    /**
+     * Adds one reading to the group of the given key, with what it means for the key's rule.
+     */
+    void add(long key, long timestamp, double rawValue, byte kind) {
+        add(key, timestamp, rawValue, kind, 0);
+    }
+
+    /**
+     * Adds one reading to the group of the given key, with what it means for the key's rule and,
+     * for {@link AlertRule#SAMPLE} readings, the number from its record the rule needs with it.
+     */
+    void add(long key, long timestamp, double rawValue, byte kind, double sampleValue) {
+        // The reading comes from the last record that was seen.
+        add(key, timestamp, rawValue, kind, sampleValue, records - 1);
+    }
+
+    private void add(long key, long timestamp, double rawValue, byte kind, double sampleValue, long sequence) {
+        int group = keys.add(key);
+        if (group == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, group * 2);
+            values = Arrays.copyOf(values, group * 2);
+            kinds = Arrays.copyOf(kinds, group * 2);
+            samples = Arrays.copyOf(samples, group * 2);
+            counts = Arrays.copyOf(counts, group * 2);
+            if (sequences != null) {
+                sequences = Arrays.copyOf(sequences, group * 2);
+            }
+        }
+        long[] buffer = timestamps[group];
+        double[] valueBuffer = values[group];
+        byte[] kindBuffer = kinds[group];
+        int count = counts[group];
+        if (buffer == null) {
+            buffer = timestamps[group] = new long[8];
+            valueBuffer = values[group] = new double[8];
+            kindBuffer = kinds[group] = new byte[8];
+        } else if (count == buffer.length) {
+            buffer = timestamps[group] = Arrays.copyOf(buffer, count * 2);
+            valueBuffer = values[group] = Arrays.copyOf(valueBuffer, count * 2);
+            kindBuffer = kinds[group] = Arrays.copyOf(kindBuffer, count * 2);
+        }
+        buffer[count] = timestamp;
+        valueBuffer[count] = rawValue;
+        kindBuffer[count] = kind;
+        if (kind == AlertRule.SAMPLE) {
+            double[] sampleBuffer = samples[group];
+            if (sampleBuffer == null || sampleBuffer.length < buffer.length) {
+                sampleBuffer = samples[group] = sampleBuffer == null ? new double[buffer.length] : Arrays.copyOf(sampleBuffer, buffer.length);
+            }
+            sampleBuffer[count] = sampleValue;
+        }
+        if (sequences != null) {
+            long[] sequenceBuffer = sequences[group];
+            if (sequenceBuffer == null || sequenceBuffer.length < buffer.length) {
+                sequenceBuffer = sequences[group] = sequenceBuffer == null ? new long[buffer.length] : Arrays.copyOf(sequenceBuffer, buffer.length);
+            }
+            sequenceBuffer[count] = sequence;
+        }
+        counts[group] = count + 1;
+    }
+
+    /**
+     * Counts a record that was read, and moves the watermark up to its timestamp if it's later.
+     * The readings added after it come from this record, until the next one is seen.
+     */
+    void see(long timestamp) {
+        records++;
+        if (timestamp > watermark) {
+            watermark = timestamp;
+        }
+    }
+
+    /**
+     * Returns how many records were read, which is also the sequence the next one will get.
+     */
+    long records() {
+        return records;
+    }
+
+    /**
+     * Returns the latest timestamp of any record that was read, or NO_RECORDS.
+     */
+    long watermark() {
+        return watermark;
+    }
+
+    /**
+     * Appends all the violations of another collection, group by group in the other collection's order.
+     * Appending collections in file order gives the same groups, in the same order, as adding every violation here,
+     * and the other collection's records are counted after the ones here, so their sequences go on from here too.
+     */
+    void addAll(ViolationTimestamps other) {
+        for (int group = 0; group < other.size(); group++) {
+            long key = other.key(group);
+            long[] buffer = other.timestamps[group];
+            double[] valueBuffer = other.values[group];
+            byte[] kindBuffer = other.kinds[group];
+            double[] sampleBuffer = other.samples[group];
+            long[] sequenceBuffer = other.sequences == null ? null : other.sequences[group];
+            for (int i = 0; i < other.counts[group]; i++) {
+                add(key, buffer[i], valueBuffer[i], kindBuffer[i], sampleBuffer == null ? 0 : sampleBuffer[i],
+                        sequenceBuffer == null ? -1 : records + sequenceBuffer[i]);
+            }
+        }
+        records += other.records;
+        watermark = Math.max(watermark, other.watermark);
+    }
+
+    /**
+     * Sorts a group's violations by time. Violations with the same timestamp keep the order they were added in,
+     * so the result is the same as reading them in that order from a file that is sorted by time.
+     * Then every {@link AlertRule#CLEAR} right after another one is dropped.
+     */
+    void sort(int group) {
+        long[] buffer = timestamps[group];
+        double[] valueBuffer = values[group];
+        byte[] kindBuffer = kinds[group];
+        double[] sampleBuffer = samples[group];
+        long[] sequenceBuffer = sequences == null ? null : sequences[group];
+        int count = counts[group];
+        // Ground-station dumps are nearly always in time order already, so check that first.
+        for (int i = 1; i < count; i++) {
+            if (buffer[i] < buffer[i - 1]) {
+                mergeSort(buffer, valueBuffer, kindBuffer, sampleBuffer, sequenceBuffer, new long[count], new double[count],
+                        new byte[count], sampleBuffer == null ? null : new double[count],
+                        sequenceBuffer == null ? null : new long[count], 0, count);
+                break;
+            }
+        }
+
+        // The key already stopped violating at the first CLEAR of a run, and the later ones don't change that.
+        int kept = Math.min(count, 1);
+        for (int i = 1; i < count; i++) {
+            if (kindBuffer[i] == AlertRule.CLEAR && kindBuffer[kept - 1] == AlertRule.CLEAR) {
+                continue;
+            }
+            buffer[kept] = buffer[i];
+            valueBuffer[kept] = valueBuffer[i];
+            kindBuffer[kept] = kindBuffer[i];
+            if (sampleBuffer != null) {
+                sampleBuffer[kept] = sampleBuffer[i];
+            }
+            if (sequenceBuffer != null) {
+                sequenceBuffer[kept] = sequenceBuffer[i];
+            }
+            kept++;
+        }
+        counts[group] = kept;
+    }
+
+    // A plain merge sort of [from, to), moving the raw values, kinds, sample values and sequences (if there are any)
+    // along with their timestamps.
+    private static void mergeSort(long[] times, double[] rawValues, byte[] kinds, double[] samples, long[] sequences,
+                                  long[] timesCopy, double[] rawValuesCopy, byte[] kindsCopy, double[] samplesCopy,
+                                  long[] sequencesCopy, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(times, rawValues, kinds, samples, sequences, timesCopy, rawValuesCopy, kindsCopy, samplesCopy, sequencesCopy,
+                from, middle);
+        mergeSort(times, rawValues, kinds, samples, sequences, timesCopy, rawValuesCopy, kindsCopy, samplesCopy, sequencesCopy,
+                middle, to);
+        if (times[middle - 1] <= times[middle]) {
+            return;
+        }
+        System.arraycopy(times, from, timesCopy, from, to - from);
+        System.arraycopy(rawValues, from, rawValuesCopy, from, to - from);
+        System.arraycopy(kinds, from, kindsCopy, from, to - from);
+        if (samples != null) {
+            System.arraycopy(samples, from, samplesCopy, from, to - from);
+        }
+        if (sequences != null) {
+            System.arraycopy(sequences, from, sequencesCopy, from, to - from);
+        }
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            // Taking from the left half on ties keeps equal timestamps in their old order.
+            int source = right == to || (left < middle && timesCopy[left] <= timesCopy[right]) ? left++ : right++;
+            times[i] = timesCopy[source];
+            rawValues[i] = rawValuesCopy[source];
+            kinds[i] = kindsCopy[source];
+            if (samples != null) {
+                samples[i] = samplesCopy[source];
+            }
+            if (sequences != null) {
+                sequences[i] = sequencesCopy[source];
+            }
+        }
+    }
+
+    /**
+     * Returns how many groups there are.
+     */
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the group of the key, or -1 if it has none.
+     */
+    int indexOf(long key) {
+        return keys.indexOf(key);
+    }
+
+    /**
+     * Returns the packed (satellite, rule) key of a group.
+     */
+    long key(int group) {
+        return keys.key(group);
+    }
+
+    /**
+     * Returns the timestamp buffer of a group. Only the first {@link #count(int)} entries are used.
+     */
+    long[] timestamps(int group) {
+        return timestamps[group];
+    }
+
+    /**
+     * Returns the raw value buffer of a group, in the same order as its timestamps.
+     */
+    double[] rawValues(int group) {
+        return values[group];
+    }
+
+    /**
+     * Returns the kind buffer of a group (see {@link AlertRule#classify}), in the same order as its timestamps.
+     */
+    byte[] kinds(int group) {
+        return kinds[group];
+    }
+
+    /**
+     * Returns the sample value buffer of a group, in the same order as its timestamps, or null if it has no
+     * {@link AlertRule#SAMPLE} readings.
+     */
+    double[] sampleValues(int group) {
+        return samples[group];
+    }
+
+    /**
+     * Returns the sequence buffer of a group, in the same order as its timestamps, or null if the sequences
+     * aren't kept.
+     */
+    long[] sequences(int group) {
+        return sequences == null ? null : sequences[group];
+    }
+
+    /**
+     * Returns how many readings a group has.
+     */
+    int count(int group) {
+        return counts[group];
+    }
+}
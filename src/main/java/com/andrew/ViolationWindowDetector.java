@@ -0,0 +1,224 @@
+package com.andrew;
+
+import java.util.Arrays;
+
+/**
+ * This class decides, one violation at a time, when a (satellite, rule) has had N violations within a time window.
+ *
+ * For every key it only remembers the timestamps of the last N violations, in a small ring: once the ring is full,
+ * each new violation overwrites the oldest one. When a violation arrives, the oldest timestamp left in the ring is
+ * the first of the last N violations, so the rule holds exactly when the new violation is at most the window length
+ * after it. That is one subtraction and one comparison per violation, and a fixed amount of memory per key no matter
+ * how many violations it has, so millions of keys can be watched at once.
+ *
+ * Alerts follow episodes. An episode opens when the rule starts to hold and stays open for as long as it keeps
+ * holding; only a violation that makes the rule hold again after it stopped opens a new episode and raises a
+ * new alert, with the timestamp of the first violation in that window. After a violation with oldest-of-the-last-N
+ * timestamp "first", the rule keeps holding until first + window, even if no other violation comes. So the only extra
+ * state per key is that end time: a violation at or before it continues the episode, a later one can start a new one.
+ * The violations of each key have to be added in time order.
+ *
+ * For the RESOLVED message of an episode the detector also keeps its start, its end and its peak raw value (the
+ * worst one in the rule's direction). The ring keeps the raw values next to the timestamps, so the peak of the
+ * violations that opened the episode is known, and every violation after that only has to be compared with it.
+ *
+ * Rules with hysteresis (see {@link AlertRule#classify}) also need to know whether the key is violating right now,
+ * because a reading between the exit and enter margins only counts if it is. That is one more flag per key, next to
+ * its ring, set and cleared by {@link #applyHysteresis(int, byte)}.
+ *
+ * Keys are looked up once with {@link #index(long)}, and everything else works on the index.
+ * Every rule can have its own N and window, so the rule is passed in with each violation. A key always belongs
+ * to the same rule, so its N never changes; the rings are sized for the biggest N of any rule.
+ */
+final class ViolationWindowDetector {
+
+    // Returned by alertTimestamp for keys that haven't had an alert.
+    static final long NO_ALERT = Long.MIN_VALUE;
+    // The episode end of keys that aren't in an episode.
+    private static final long NO_EPISODE = Long.MIN_VALUE;
+
+    // The ring length of every key, the biggest count any rule uses.
+    private final int stride;
+
+    private final LongKeyIndex keys = new LongKeyIndex();
+    // Key i's ring is rings[i * stride] up to rings[i * stride + count - 1], with the raw values at the same places in ringValues.
+    private long[] rings;
+    private double[] ringValues;
+    // How many violations key i has had (we only care up to count), and where its next one goes in its ring.
+    private int[] filled;
+    private int[] next;
+    // The timestamp of the first violation in the window that raised key i's latest alert, or NO_ALERT.
+    // That is also when its latest episode started.
+    private long[] alertTimestamps;
+    // Until when key i's current episode holds, or NO_EPISODE.
+    private long[] episodeEnds;
+    // The worst raw value of key i's latest episode.
+    private double[] peaks;
+    // Whether key i is violating right now, for rules with hysteresis.
+    private boolean[] violating;
+
+    /**
+     * @param maxCount The biggest number of violations any rule needs within its window.
+     */
+    ViolationWindowDetector(int maxCount) {
+        this.stride = maxCount;
+        rings = new long[16 * stride];
+        ringValues = new double[16 * stride];
+        filled = new int[16];
+        next = new int[16];
+        alertTimestamps = new long[16];
+        Arrays.fill(alertTimestamps, NO_ALERT);
+        episodeEnds = new long[16];
+        Arrays.fill(episodeEnds, NO_EPISODE);
+        peaks = new double[16];
+        violating = new boolean[16];
+    }
+
+    /**
+     * Returns the index of the key, giving it the next one the first time it's seen.
+     */
+    int index(long key) {
+        int index = keys.add(key);
+        if (index == filled.length) {
+            grow(index * 2);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a violation for the key with the given index and checks its rule.
+     *
+     * @param rule The rule the key belongs to. Its count can be at most the maxCount given to the constructor.
+     * @return true if this violation opened a new episode for the key, i.e. the rule holds now but didn't just before.
+     */
+    boolean add(int index, long timestamp, double rawValue, AlertRule rule) {
+        int count = rule.count;
+        int ring = index * stride;
+        int position = next[index];
+        rings[ring + position] = timestamp;
+        ringValues[ring + position] = rawValue;
+        position = position + 1 == count ? 0 : position + 1;
+        next[index] = position;
+        if (filled[index] < count) {
+            filled[index]++;
+        }
+
+        // With a full ring the next slot to overwrite holds the oldest of the last N violations.
+        if (filled[index] < count) {
+            return false;
+        }
+        long first = rings[ring + position];
+        if (timestamp - first > rule.windowMillis) {
+            // The rule doesn't hold, and the episode (if there was one) already ended before this violation.
+            return false;
+        }
+        // The rule holds. If it held all the way up to now, this is the same episode, just extended.
+        boolean continues = timestamp <= episodeEnds[index];
+        episodeEnds[index] = first + rule.windowMillis;
+        if (continues) {
+            peaks[index] = rule.worse(peaks[index], rawValue);
+            return false;
+        }
+        alertTimestamps[index] = first;
+        // The new episode is made of the N violations in the ring.
+        double peak = rawValue;
+        for (int i = 0; i < count; i++) {
+            peak = rule.worse(peak, ringValues[ring + i]);
+        }
+        peaks[index] = peak;
+        return true;
+    }
+
+    /**
+     * Updates whether the key is violating with what a reading means for its rule, and returns whether
+     * the reading is a violation: always for {@link AlertRule#ENTER}, never for {@link AlertRule#CLEAR},
+     * and for {@link AlertRule#HOLD} only if the key was already violating.
+     * Readings of a key have to be passed in time order, like its violations.
+     */
+    boolean applyHysteresis(int index, byte kind) {
+        if (kind == AlertRule.ENTER) {
+            violating[index] = true;
+        } else if (kind != AlertRule.HOLD) {
+            violating[index] = false;
+        }
+        return violating[index];
+    }
+
+    /**
+     * Returns true if the key is in an episode that stopped holding before the given time,
+     * so it can be reported as resolved and then {@link #close(int) closed}.
+     */
+    boolean endedBefore(int index, long timestamp) {
+        return episodeEnds[index] != NO_EPISODE && episodeEnds[index] < timestamp;
+    }
+
+    /**
+     * Returns true if the key is in an episode that hasn't been {@link #close(int) closed} yet.
+     */
+    boolean inEpisode(int index) {
+        return episodeEnds[index] != NO_EPISODE;
+    }
+
+    /**
+     * Ends the key's current episode, after its RESOLVED message went out. Its start and peak stay readable.
+     */
+    void close(int index) {
+        episodeEnds[index] = NO_EPISODE;
+    }
+
+    /**
+     * Returns how many keys have had at least one violation.
+     */
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the index of the key, or -1 if it hasn't had a violation.
+     */
+    int indexOf(long key) {
+        return keys.indexOf(key);
+    }
+
+    /**
+     * Returns the key with the given index. Keys get their index in the order of their first violation.
+     */
+    long key(int index) {
+        return keys.key(index);
+    }
+
+    /**
+     * Returns the timestamp of the first violation in the window that raised the key's latest alert, or NO_ALERT.
+     */
+    long alertTimestamp(int index) {
+        return alertTimestamps[index];
+    }
+
+    /**
+     * Returns the time the key's current episode stops holding, unless more violations extend it.
+     */
+    long episodeEnd(int index) {
+        return episodeEnds[index];
+    }
+
+    /**
+     * Returns the worst raw value of the key's latest episode.
+     */
+    double peak(int index) {
+        return peaks[index];
+    }
+
+    private void grow(int capacity) {
+        rings = Arrays.copyOf(rings, capacity * stride);
+        ringValues = Arrays.copyOf(ringValues, capacity * stride);
+        filled = Arrays.copyOf(filled, capacity);
+        next = Arrays.copyOf(next, capacity);
+        int old = alertTimestamps.length;
+        alertTimestamps = Arrays.copyOf(alertTimestamps, capacity);
+        Arrays.fill(alertTimestamps, old, capacity, NO_ALERT);
+        episodeEnds = Arrays.copyOf(episodeEnds, capacity);
+        Arrays.fill(episodeEnds, old, capacity, NO_EPISODE);
+        peaks = Arrays.copyOf(peaks, capacity);
+        violating = Arrays.copyOf(violating, capacity);
+    }
+}
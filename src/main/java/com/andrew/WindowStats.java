@@ -0,0 +1,268 @@
+package com.andrew;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Duration;
+
+/**
+ * This class keeps the min, max, mean and standard deviation of the raw values of one (satellite, component)
+ * over a sliding time window, updated one reading at a time.
+ *
+ * A reading at time t stays in the window until a reading after t + window arrives, the same inclusive window
+ * the alert rules use. Nothing is ever rescanned:
+ *   - The mean and the variance are running sums (Welford's, so they stay accurate): a reading is added to them
+ *     when it arrives and taken out again when it leaves the window. For that the readings in the window are
+ *     kept in a ring, oldest first.
+ *   - The min and the max come from monotonic deques. The min deque only keeps readings that are smaller than
+ *     everything after them, so its front is the minimum; a new reading first drops every reading at the back
+ *     that isn't smaller than it, since those can never be the minimum again. The max deque is the same the
+ *     other way round. Every reading goes into and out of each deque at most once, so a reading costs O(1)
+ *     work on average, however big the window is.
+ *
+ * Next to the window it keeps an exponentially weighted moving average (EWMA) of the raw value and of its rate of
+ * change, which is what the time-to-limit estimates come from: going on at the smoothed rate, how long until the
+ * smoothed value reaches the yellow and the red limit on the side it's heading for. The weights follow the time
+ * between readings, so a reading counts for as much after a long gap as after many short ones that add up to it.
+ * That is a few doubles per key and nothing allocated per reading.
+ *
+ * Readings have to be added in time order.
+ */
+final class WindowStats {
+
+    // How fast the EWMAs forget: a reading's weight drops to about a third after this long.
+    static final long EWMA_TIME_CONSTANT_MILLIS = 60_000;
+
+    private final long windowMillis;
+    // The readings in the window, and the two deques. The deque fronts are always in the window too.
+    private final SampleRing readings = new SampleRing();
+    private final SampleRing minimums = new SampleRing();
+    private final SampleRing maximums = new SampleRing();
+    // Welford's running mean and sum of squared differences from the mean, over the readings in the window.
+    private double mean;
+    private double squares;
+    // The smoothed raw value and rate of change (per second), and the latest reading they've seen.
+    private double ewma;
+    private double ewmaSlope;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private double lastRawValue;
+    // The limits of the latest reading's record.
+    private double redHighLimit;
+    private double yellowHighLimit;
+    private double yellowLowLimit;
+    private double redLowLimit;
+
+    /**
+     * @param windowMillis How long a reading stays in the window, in milliseconds.
+     */
+    WindowStats(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Adds the reading of a record, and remembers its limits for the time-to-limit estimates.
+     */
+    void add(long timestamp, double rawValue, double redHighLimit, double yellowHighLimit, double yellowLowLimit, double redLowLimit) {
+        this.redHighLimit = redHighLimit;
+        this.yellowHighLimit = yellowHighLimit;
+        this.yellowLowLimit = yellowLowLimit;
+        this.redLowLimit = redLowLimit;
+        add(timestamp, rawValue);
+    }
+
+    /**
+     * Adds a reading, and lets go of the ones that are now too old.
+     */
+    void add(long timestamp, double rawValue) {
+        if (lastTimestamp == Long.MIN_VALUE) {
+            // The very first reading starts the averages off.
+            ewma = rawValue;
+        } else if (timestamp > lastTimestamp) {
+            double seconds = (timestamp - lastTimestamp) / 1000.0;
+            double weight = 1 - Math.exp(-(timestamp - lastTimestamp) / (double) EWMA_TIME_CONSTANT_MILLIS);
+            ewma += weight * (rawValue - ewma);
+            ewmaSlope += weight * ((rawValue - lastRawValue) / seconds - ewmaSlope);
+        }
+        lastTimestamp = timestamp;
+        lastRawValue = rawValue;
+
+        expire(timestamp);
+
+        readings.addLast(timestamp, rawValue);
+        int n = readings.size;
+        double difference = rawValue - mean;
+        mean += difference / n;
+        squares += difference * (rawValue - mean);
+
+        while (minimums.size > 0 && minimums.lastValue() >= rawValue) {
+            minimums.removeLast();
+        }
+        minimums.addLast(timestamp, rawValue);
+        while (maximums.size > 0 && maximums.lastValue() <= rawValue) {
+            maximums.removeLast();
+        }
+        maximums.addLast(timestamp, rawValue);
+    }
+
+    // Takes every reading from before timestamp - window out of the sums and the deques.
+    private void expire(long timestamp) {
+        long oldest = timestamp - windowMillis;
+        while (readings.size > 0 && readings.firstTime() < oldest) {
+            double rawValue = readings.firstValue();
+            readings.removeFirst();
+            int n = readings.size;
+            if (n == 0) {
+                mean = 0;
+                squares = 0;
+            } else {
+                // Welford's update run backwards.
+                double difference = rawValue - mean;
+                mean -= difference / n;
+                squares = Math.max(0, squares - difference * (rawValue - mean));
+            }
+        }
+        while (minimums.size > 0 && minimums.firstTime() < oldest) {
+            minimums.removeFirst();
+        }
+        while (maximums.size > 0 && maximums.firstTime() < oldest) {
+            maximums.removeFirst();
+        }
+    }
+
+    /**
+     * Returns how many readings are in the window.
+     */
+    int count() {
+        return readings.size;
+    }
+
+    /**
+     * Returns the smallest raw value in the window. The window must not be empty.
+     */
+    double min() {
+        return minimums.firstValue();
+    }
+
+    /**
+     * Returns the largest raw value in the window. The window must not be empty.
+     */
+    double max() {
+        return maximums.firstValue();
+    }
+
+    double mean() {
+        return mean;
+    }
+
+    /**
+     * Returns the (population) standard deviation of the raw values in the window.
+     */
+    double standardDeviation() {
+        return readings.size == 0 ? 0 : Math.sqrt(squares / readings.size);
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the raw value.
+     */
+    double ewma() {
+        return ewma;
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the rate of change, in raw value units per second.
+     */
+    double ewmaSlope() {
+        return ewmaSlope;
+    }
+
+    /**
+     * Returns how long, going on at the smoothed rate, until the smoothed value reaches a high or a low limit,
+     * in milliseconds: 0 if it's past it already, or -1 if it isn't heading for it.
+     */
+    long millisUntil(double limitValue, boolean high) {
+        double distance = high ? limitValue - ewma : ewma - limitValue;
+        if (distance <= 0) {
+            return 0;
+        }
+        double speed = high ? ewmaSlope : -ewmaSlope;
+        if (speed <= 0) {
+            return -1;
+        }
+        return Math.round(distance / speed * 1000);
+    }
+
+    /**
+     * Returns the numbers as they are now, for the JSON output.
+     */
+    Summary summary() {
+        // The limits on the side the value is heading for, or when it's steady, the side it's on.
+        boolean high = ewmaSlope != 0 ? ewmaSlope > 0 : ewma >= (yellowHighLimit + yellowLowLimit) / 2;
+        return new Summary(count(), min(), max(), mean(), standardDeviation(), ewma, ewmaSlope,
+                millisUntil(high ? yellowHighLimit : yellowLowLimit, high), millisUntil(high ? redHighLimit : redLowLimit, high));
+    }
+
+    /**
+     * This class is what {@link WindowStats} looks like in an alert's JSON. The times to the yellow and red limits
+     * are durations like "PT4M30S", and left out when the value isn't heading for the limits.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static final class Summary {
+        private final int count;
+        private final double min;
+        private final double max;
+        private final double mean;
+        private final double stdDev;
+        private final double ewma;
+        private final double ewmaSlope;
+        private final String timeToYellow;
+        private final String timeToRed;
+
+        Summary(int count, double min, double max, double mean, double stdDev, double ewma, double ewmaSlope,
+                long millisToYellow, long millisToRed) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.stdDev = stdDev;
+            this.ewma = ewma;
+            this.ewmaSlope = ewmaSlope;
+            this.timeToYellow = millisToYellow < 0 ? null : Duration.ofMillis(millisToYellow).toString();
+            this.timeToRed = millisToRed < 0 ? null : Duration.ofMillis(millisToRed).toString();
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStdDev() {
+            return stdDev;
+        }
+
+        public double getEwma() {
+            return ewma;
+        }
+
+        public double getEwmaSlope() {
+            return ewmaSlope;
+        }
+
+        public String getTimeToYellow() {
+            return timeToYellow;
+        }
+
+        public String getTimeToRed() {
+            return timeToRed;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.andrew;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps a {@link WindowStats} for every (satellite, component) that has alert rules, keyed by
+ * {@link StreamKey} with the component code. Its window is the longest window of the component's rules,
+ * so the numbers cover at least the readings the rules look at.
+ *
+ * For the periodic health snapshots it also knows which components every satellite has, and the last
+ * period a snapshot of the satellite went out for.
+ */
+final class WindowStatsTable {
+
+    private final RuleTable rules;
+    private final LongKeyIndex keys = new LongKeyIndex();
+    private WindowStats[] stats = new WindowStats[16];
+    // By satellite index: the indexes of its components' stats, and the last period it had a snapshot for.
+    private final LongKeyIndex satellites = new LongKeyIndex();
+    private int[][] componentsOf = new int[16][];
+    private int[] componentCounts = new int[16];
+    private long[] reportedPeriods = new long[16];
+
+    WindowStatsTable(RuleTable rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Adds the reading of a record to the window of its (satellite, component).
+     *
+     * @return The stats of its (satellite, component), or null if the component has no rules and so no stats.
+     */
+    WindowStats add(App.TelemetryRecord record) {
+        long windowMillis = rules.statsWindowMillis(record.componentCode);
+        if (windowMillis < 0) {
+            return null;
+        }
+        int index = keys.add(StreamKey.of(record.sateliteId, record.componentCode));
+        if (index == stats.length) {
+            stats = Arrays.copyOf(stats, index * 2);
+        }
+        if (stats[index] == null) {
+            stats[index] = new WindowStats(windowMillis);
+            addComponent(record.sateliteId, index);
+        }
+        stats[index].add(record.timestamp, record.rawValue, record.redHighLimit, record.yellowHighLimit,
+                record.yellowLowLimit, record.redLowLimit);
+        return stats[index];
+    }
+
+    private void addComponent(int satelliteId, int index) {
+        int satellite = satellites.add(satelliteId);
+        if (satellite == componentsOf.length) {
+            componentsOf = Arrays.copyOf(componentsOf, satellite * 2);
+            componentCounts = Arrays.copyOf(componentCounts, satellite * 2);
+            reportedPeriods = Arrays.copyOf(reportedPeriods, satellite * 2);
+        }
+        int[] components = componentsOf[satellite];
+        int count = componentCounts[satellite];
+        if (components == null) {
+            components = componentsOf[satellite] = new int[4];
+            reportedPeriods[satellite] = Long.MIN_VALUE;
+        } else if (count == components.length) {
+            components = componentsOf[satellite] = Arrays.copyOf(components, count * 2);
+        }
+        components[count] = index;
+        componentCounts[satellite] = count + 1;
+    }
+
+    /**
+     * Returns true, once per period, for the first reading of the satellite in a new period of the given length,
+     * which is when its health snapshot is due. The satellite must have had a reading with stats.
+     */
+    boolean snapshotDue(int satelliteId, long timestamp, long periodMillis) {
+        int satellite = satellites.indexOf(satelliteId);
+        long period = Math.floorDiv(timestamp, periodMillis);
+        if (period <= reportedPeriods[satellite]) {
+            return false;
+        }
+        reportedPeriods[satellite] = period;
+        return true;
+    }
+
+    /**
+     * Returns the stats of every component of the satellite, by component name, in the order they were first seen.
+     */
+    Map<String, WindowStats.Summary> snapshot(int satelliteId) {
+        int satellite = satellites.indexOf(satelliteId);
+        Map<String, WindowStats.Summary> components = new LinkedHashMap<>();
+        for (int i = 0; i < componentCounts[satellite]; i++) {
+            int index = componentsOf[satellite][i];
+            components.put(ComponentCodes.nameOf(StreamKey.code(keys.key(index))), stats[index].summary());
+        }
+        return components;
+    }
+}
@@ -0,0 +1,84 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks the anomaly baseline against weighting the readings directly, and which readings stand out from it.
+ */
+public class AnomalyTableTest extends TestCase
+{
+    private static final long START = 1_514_847_600_000L;
+
+    public void testSpikeStandsOutFromTheBaseline()
+    {
+        AlertRule above = anomalyRule(AlertRule.Direction.ABOVE);
+        AlertRule below = anomalyRule(AlertRule.Direction.BELOW);
+        AnomalyTable anomalies = new AnomalyTable();
+
+        // Without a baseline yet, even a big jump isn't an anomaly.
+        assertEquals(AlertRule.CLEAR, anomalies.classify(0, above, START, 50));
+        assertEquals(AlertRule.CLEAR, anomalies.classify(0, above, START + 30_000, 70));
+        for (int i = 2; i < 40; i++) {
+            // 50 and 51 in turn, every 30 seconds.
+            assertEquals(AlertRule.CLEAR, anomalies.classify(0, above, START + i * 30_000L, 50 + i % 2));
+            anomalies.classify(1, below, START + i * 30_000L, 50 + i % 2);
+        }
+        long time = START + 40 * 30_000L;
+        // Well inside any limit, but far from the usual readings.
+        assertEquals(AlertRule.ENTER, anomalies.classify(0, above, time, 56));
+        assertEquals(AlertRule.CLEAR, anomalies.classify(1, below, time, 56));
+        assertEquals(AlertRule.ENTER, anomalies.classify(1, below, time + 30_000, 44));
+    }
+
+    public void testBaselineFollowsASlowDrift()
+    {
+        AlertRule rule = anomalyRule(AlertRule.Direction.ABOVE);
+        AnomalyTable anomalies = new AnomalyTable();
+        // Creeping up 10 degrees over five hours, half a degree either side, goes into the baseline without a
+        // single anomaly.
+        for (int i = 0; i < 600; i++) {
+            double value = 50 + i / 60.0 + (i % 2 == 0 ? 0.5 : -0.5);
+            assertEquals(AlertRule.CLEAR, anomalies.classify(0, rule, START + i * 30_000L, value));
+        }
+        assertEquals(60, anomalies.mean(0), 0.5);
+        // Jumping by as much at once is one.
+        assertEquals(AlertRule.ENTER, anomalies.classify(0, rule, START + 600 * 30_000L, 70));
+    }
+
+    public void testMatchesWeightingTheReadingsDirectly()
+    {
+        Random random = new Random(3);
+        AlertRule rule = anomalyRule(AlertRule.Direction.ABOVE);
+        AnomalyTable anomalies = new AnomalyTable();
+        int n = 500;
+        long[] timestamps = new long[n];
+        double[] values = new double[n];
+        long time = START;
+        for (int i = 0; i < n; i++) {
+            time += random.nextInt(5) == 0 ? 0 : random.nextInt(120_000);
+            timestamps[i] = time;
+            values[i] = 20 + random.nextGaussian() * 3;
+            anomalies.classify(0, rule, time, values[i]);
+
+            // The first reading weighs what's left after all the time since, every later one its own weight
+            // times what's left of it since then.
+            double mean = values[0] * Math.exp(-(time - timestamps[0]) / (double) rule.baselineMillis);
+            for (int j = 1; j <= i; j++) {
+                double weight = 1 - Math.exp(-(timestamps[j] - timestamps[j - 1]) / (double) rule.baselineMillis);
+                mean += weight * values[j] * Math.exp(-(time - timestamps[j]) / (double) rule.baselineMillis);
+            }
+            assertEquals(mean, anomalies.mean(0), 1e-9);
+        }
+    }
+
+    private static AlertRule anomalyRule(AlertRule.Direction direction)
+    {
+        AlertRule rule = new AlertRule();
+        rule.type = AlertRule.Type.ANOMALY;
+        rule.direction = direction;
+        rule.baselineMillis = rule.baselineSeconds * 1000;
+        return rule;
+    }
+}
@@ -4,12 +4,29 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 /**
  * Unit test for simple App.
  */
 public class AppTest 
     extends TestCase
 {
+    private static final String NL = System.lineSeparator();
+
     /**
      * Create the test case
      *
@@ -35,4 +52,677 @@ public class AppTest
     {
         assertTrue( true );
     }
+
+    /**
+     * The parallel path has to print exactly what the batch path prints. The streaming path prints the same alerts,
+     * in the order they happened, like live mode.
+     */
+    public void testStreamingAndParallelMatchBatch() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:05.001|1001|101|98|25|20|99.9|TSTAT",
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:01:26.011|1001|101|98|25|20|99.8|TSTAT",
+                "20180101 23:01:38.001|1000|101|98|25|20|102.9|TSTAT",
+                "20180101 23:01:49.021|1000|101|98|25|20|87.9|TSTAT",
+                "",
+                "20180101 23:02:09.014|1001|101|98|25|20|89.3|TSTAT",
+                "20180101 23:02:10.021|1001|101|98|25|20|89.4|TSTAT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:03:03.008|1000|101|98|25|20|102.7|TSTAT",
+                "20180101 23:03:05.009|1000|101|98|25|20|101.2|TSTAT",
+                "20180101 23:04:06.017|1001|101|98|25|20|89.9|TSTAT",
+                "20180101 23:04:11.531|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:05:05.021|1001|101|98|25|20|89.9|TSTAT",
+                "20180101 23:05:07.421|1001|17|15|9|8|7.9|BATT",
+                "20180101 23:11:00.000|1001|17|15|9|8|7.1|BATT",
+                "20180101 23:12:00.000|1001|17|15|9|8|7.2|BATT",
+                "20180101 23:16:30.000|1001|17|15|9|8|7.3|BATT",
+                "20180101 23:17:00.000|1001|17|15|9|8|7.4|BATT");
+
+        String batch = runApp("--compact", input.getPath());
+        String streamed = runApp("--stream", "--compact", input.getPath());
+        String parallel = runApp("--parallel", "--compact", input.getPath());
+        String live = runApp("--live", input.getPath());
+
+        assertTrue(batch.contains("\"RED HIGH\""));
+        assertEquals(sortedAlerts(batch, null), sortedAlerts(streamed, null));
+        assertFalse(batch.equals(streamed));
+        assertEquals("[" + String.join(",", live.split("\\R")) + "]" + NL, streamed);
+        assertEquals(batch, parallel);
+    }
+
+    /**
+     * The streaming path can't sort the file first like the batch path does, so a record out of time order stops it.
+     */
+    public void testStreamingRejectsAnUnsortedFile() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:04:11.531|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT");
+
+        assertTrue(runApp("--compact", input.getPath()).contains("\"RED LOW\""));
+        try {
+            runApp("--stream", "--compact", input.getPath());
+            fail("Expected the record out of time order to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("out of time order"));
+        }
+    }
+
+    /**
+     * The JSON array is only closed once the run went through, so output that stopped half way can't pass for complete.
+     */
+    public void testFailedRunLeavesTheArrayOpen() throws Exception
+    {
+        // A file that can't be read prints nothing at all, like before alerts were written as they were found.
+        File malformed = writeInput("20180101 23:01:09.521|1000|17|15|9|8|7.8");
+        assertEquals("", runAppUntilItFails(malformed.getPath()));
+        assertEquals("", runAppUntilItFails("--parallel", malformed.getPath()));
+        assertEquals("", runAppUntilItFails("--stream", malformed.getPath()));
+
+        // The streaming path has already written the alert and RESOLVED message of the first episode when it stops.
+        File unsorted = writeInput(
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:04:11.531|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:10:00.000|1000|17|15|9|8|12.0|BATT",
+                "20180101 23:05:00.000|1000|17|15|9|8|7.9|BATT");
+        String partial = runAppUntilItFails("--stream", "--compact", unsorted.getPath());
+        assertTrue(partial, partial.startsWith("[{") && partial.endsWith("\"peakRawValue\":7.7}"));
+    }
+
+    /**
+     * Live mode prints each alert on its own line as soon as the violation that raises it is read.
+     */
+    public void testLiveModePrintsAlertsAsTheyHappen() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:01:38.001|1000|101|98|25|20|102.9|TSTAT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:03:03.008|1000|101|98|25|20|102.7|TSTAT",
+                "20180101 23:03:05.009|1000|101|98|25|20|101.2|TSTAT",
+                "20180101 23:04:11.531|1000|17|15|9|8|7.9|BATT");
+
+        String[] lines = runApp("--live", input.getPath()).split("\\R");
+
+        // The TSTAT alert is complete first, even though its window started later.
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("\"TSTAT\""));
+        assertTrue(lines[1].startsWith("{") && lines[1].contains("\"BATT\""));
+    }
+
+    /**
+     * A record older than one before it can't go into the detector any more, so live mode skips it and carries on.
+     */
+    public void testLiveModeSkipsRecordsThatArriveLate() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:01:10.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:01:20.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:09:00.000|1000|17|15|9|8|12.0|BATT",
+                "20180101 23:02:00.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:02:10.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:02:20.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:09:10.000|1000|17|15|9|8|12.0|BATT",
+                "20180101 23:09:20.000|1000|17|15|9|8|12.0|BATT",
+                "20180101 23:09:30.000|1000|17|15|9|8|12.0|BATT",
+                "20180101 23:09:40.000|1000|17|15|9|8|12.0|BATT");
+
+        String[] lines = runApp("--live", input.getPath()).split("\\R");
+
+        // The episode from 23:01 is over by 23:09, and the three late readings don't open another one.
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"timestamp\":\"2018-01-01T23:01:00Z\"}"));
+        assertTrue(lines[1].contains("\"status\":\"RESOLVED\""));
+    }
+
+    /**
+     * --compact writes the same alerts, just without the indentation.
+     */
+    public void testCompactOutputHasTheSameAlerts() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:04:11.531|1000|17|15|9|8|7.9|BATT");
+
+        String pretty = runApp(input.getPath());
+        String compact = runApp("--compact", input.getPath());
+
+        assertEquals("[ {" + NL
+                + "  \"sateliteId\" : 1000," + NL
+                + "  \"severity\" : \"RED LOW\"," + NL
+                + "  \"component\" : \"BATT\"," + NL
+                + "  \"timestamp\" : \"2018-01-01T23:01:09.521Z\"" + NL
+                + "} ]" + NL, pretty);
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\","
+                + "\"timestamp\":\"2018-01-01T23:01:09.521Z\"}]" + NL, compact);
+    }
+
+    /**
+     * Yellow readings raise their own alert, with their own window, next to the red ones.
+     */
+    public void testYellowAlertsNextToRedOnes() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:05.001|1001|101|98|25|20|99.9|TSTAT",
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:01:26.011|1001|101|98|25|20|102.8|TSTAT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:02:30.000|1001|101|98|25|20|99.1|TSTAT",
+                "20180101 23:03:00.000|1001|101|98|25|20|98.5|TSTAT",
+                "20180101 23:04:11.531|1000|17|15|9|8|7.9|BATT");
+
+        String output = runApp("--compact", input.getPath());
+
+        // Satellite 1001 has three yellow TSTAT readings (the red one in between doesn't count for yellow),
+        // satellite 1000 three red BATT readings, and the yellow group was seen first.
+        assertEquals("[{\"sateliteId\":1001,\"severity\":\"YELLOW HIGH\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:01:05.001Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:01:09.521Z\"}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", input.getPath()));
+    }
+
+    /**
+     * A second excursion later on raises a second alert, but a long one raises only one.
+     * The first one is over by the time the second starts, so it also gets a RESOLVED message.
+     */
+    public void testEveryEpisodeGetsItsOwnAlert() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:02:00.000|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:03:00.000|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:04:00.000|1000|17|15|9|8|7.6|BATT",
+                "20180101 23:06:00.000|1000|17|15|9|8|7.5|BATT",
+                "20180101 23:30:00.000|1000|17|15|9|8|7.4|BATT",
+                "20180101 23:31:00.000|1000|17|15|9|8|7.3|BATT",
+                "20180101 23:32:00.000|1000|17|15|9|8|7.2|BATT");
+
+        String output = runApp("--compact", input.getPath());
+
+        // The last three violations of the first episode started at 23:03, so it held until 23:08.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:01:00Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:08:00Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:01:00Z\",\"end\":\"2018-01-01T23:08:00Z\",\"duration\":\"PT7M\",\"peakRawValue\":7.5},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:30:00Z\"}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", input.getPath()));
+
+        // Live mode prints the RESOLVED message as soon as the 23:30 record shows the first episode is over.
+        String[] lines = runApp("--live", input.getPath()).split("\\R");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].contains("\"RESOLVED\""));
+    }
+
+    /**
+     * With a cooldown, an episode that opens too soon after the last alert is counted and summed up instead.
+     */
+    public void testCooldownHoldsBackRepeatAlerts() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:02:00.000|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:03:00.000|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:10:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:11:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:12:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:30:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:31:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:32:00.000|1000|17|15|9|8|7.8|BATT");
+        File rules = writeInput(
+                "[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"cooldownSeconds\": 1200 } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // The first alert went out at 23:03 and holds the next ones back until 23:23.
+        // The 23:10 episode is counted (and so is its RESOLVED), the 23:30 one goes out again.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:01:00Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:06:00Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:01:00Z\",\"end\":\"2018-01-01T23:06:00Z\",\"duration\":\"PT5M\",\"peakRawValue\":7.7},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:23:00Z\","
+                + "\"status\":\"SUPPRESSED\",\"start\":\"2018-01-01T23:03:00Z\",\"end\":\"2018-01-01T23:23:00Z\",\"suppressed\":1},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:30:00Z\"}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+
+        // Live mode prints the same messages, at the moment each one is known.
+        String live = runApp("--live", "--rules", rules.getPath(), input.getPath());
+        assertEquals(output, "[" + String.join(",", live.split("\\R")) + "]" + NL);
+    }
+
+    /**
+     * A rules file replaces the built-in BATT and TSTAT rules.
+     */
+    public void testMarginsKeepAChatteringReadingInOneEpisode() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:02:00.000|1000|17|15|9|8|8.1|BATT",
+                "20180101 23:03:00.000|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:04:00.000|1000|17|15|9|8|8.5|BATT",
+                "20180101 23:05:00.000|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:06:00.000|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:07:00.000|1000|17|15|9|8|8.5|BATT");
+        File rules = writeInput(
+                "[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"enterMargin\": 0.2, \"exitMargin\": 0.3 } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // 7.7 enters, and 8.1 and 7.9 are still under 8.3, so they count. 8.5 clears it, and after that
+        // 7.9 isn't far enough below 8 to start violating again.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:01:00Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:06:00Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:01:00Z\",\"end\":\"2018-01-01T23:06:00Z\",\"duration\":\"PT5M\",\"peakRawValue\":7.7}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        String live = runApp("--live", "--rules", rules.getPath(), input.getPath());
+        assertEquals(output, "[" + String.join(",", live.split("\\R")) + "]" + NL);
+    }
+
+    public void testMarginsGiveTheSameEpisodesForAShuffledFile() throws Exception
+    {
+        File rules = writeInput(
+                "[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 120,"
+                        + " \"enterMargin\": 0.2, \"exitMargin\": 0.3 } ]");
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            List<String> lines = new ArrayList<>();
+            long time = 1_514_847_600_000L;
+            for (int i = 0; i < 300; i++) {
+                // Readings that chatter around the red low limit of 8, on two satellites.
+                time += 1 + random.nextInt(30_000);
+                lines.add(DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss.SSS").withZone(ZoneOffset.UTC).format(Instant.ofEpochMilli(time))
+                        + "|" + (1000 + random.nextInt(2)) + "|17|15|9|8|" + (7 + random.nextInt(20) / 10.0) + "|BATT");
+            }
+            File sorted = writeInput(lines.toArray(new String[0]));
+            Collections.shuffle(lines, random);
+            File shuffled = writeInput(lines.toArray(new String[0]));
+
+            // The groups come out in the order of their first violation in the file, so only the order of those can change.
+            List<String> alerts = sortedAlerts(runApp("--compact", "--rules", rules.getPath(), sorted.getPath()), null);
+            assertTrue(alerts.toString().contains("RESOLVED"));
+            assertEquals("seed " + seed, alerts, sortedAlerts(runApp("--compact", "--rules", rules.getPath(), shuffled.getPath()), null));
+            assertEquals("seed " + seed, alerts,
+                    sortedAlerts(runApp("--parallel", "--compact", "--rules", rules.getPath(), shuffled.getPath()), null));
+        }
+    }
+
+    public void testStatsAreAddedToEveryAlert() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|17|15|9|8|9.5|BATT",
+                "20180101 23:02:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:03:00.000|1000|17|15|9|8|7.6|BATT",
+                "20180101 23:03:30.000|1000|101|98|25|20|90|TSTAT",
+                "20180101 23:04:00.000|1000|17|15|9|8|7.9|BATT",
+                "20180101 23:06:30.000|1000|17|15|9|8|9.7|BATT");
+
+        String output = runApp("--compact", "--stats", input.getPath());
+
+        // The alert is raised by the 23:04 reading, so its window has the four readings up to then.
+        // The smoothed value is below both limits already, so there's no time left to either of them.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:02:00Z\","
+                + "\"stats\":{\"count\":4,\"min\":7.6,\"max\":9.5,\"mean\":8.200000000000001,\"stdDev\":0.7582875444051556,"
+                + "\"ewma\":7.901341240521258,\"ewmaSlope\":-3.84104869211848E-5,\"timeToYellow\":\"PT0S\",\"timeToRed\":\"PT0S\"}}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", "--stats", input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--stats", input.getPath()));
+
+        // Live mode also prints a health snapshot of each satellite on its first reading of every minute.
+        String[] live = runApp("--live", "--stats", input.getPath()).split("\\R");
+        assertEquals(6, live.length);
+        assertEquals("{\"sateliteId\":1000,\"timestamp\":\"2018-01-01T23:01:00Z\",\"status\":\"HEALTH\",\"components\":{"
+                + "\"BATT\":{\"count\":1,\"min\":9.5,\"max\":9.5,\"mean\":9.5,\"stdDev\":0.0,\"ewma\":9.5,\"ewmaSlope\":0.0}}}", live[0]);
+        assertTrue(live[3].contains("\"timestamp\":\"2018-01-01T23:04:00Z\",\"status\":\"HEALTH\""));
+        assertEquals("[" + live[4] + "]" + NL, output);
+        // The 23:01 reading has left the window by 23:06:30, and the battery is climbing back towards its yellow high limit.
+        assertTrue(live[5].contains("\"BATT\":{\"count\":4,\"min\":7.6,\"max\":9.7"));
+        assertTrue(live[5].contains("\"timeToYellow\":\"PT8M"));
+        assertTrue(live[5].contains("\"TSTAT\":{\"count\":1,\"min\":90.0"));
+    }
+
+    public void testStatsStopAtTheViolatingRecord() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:02:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:02:30.000|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:03:00.000|1000|17|15|9|8|7.6|BATT",
+                "20180101 23:03:00.000|1000|17|15|9|8|12.0|BATT");
+
+        String output = runApp("--compact", "--stats", input.getPath());
+
+        // The 7.6 reading raises the alert. The 12.0 one has the same timestamp but comes after it, so it isn't in the stats.
+        assertTrue(output, output.contains("\"stats\":{\"count\":3,\"min\":7.6,\"max\":7.8,"));
+        assertEquals(output, runApp("--stream", "--compact", "--stats", input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--stats", input.getPath()));
+        List<String> live = new ArrayList<>();
+        for (String line : runApp("--live", "--stats", input.getPath()).split("\\R")) {
+            if (!line.contains("HEALTH")) {
+                live.add(line);
+            }
+        }
+        assertEquals(output, "[" + String.join(",", live) + "]" + NL);
+    }
+
+    public void testTrendRuleWarnsBeforeTheLimitIsCrossed() throws Exception
+    {
+        String[] lines = new String[15];
+        double[] values = {90, 91, 92, 93, 94, 95, 96, 97, 98, 99, 100, 101.5, 102, 90, 90};
+        for (int i = 0; i < lines.length; i++) {
+            // A reading every 30 seconds from 23:01, climbing 2 degrees a minute towards the red high limit of 101.
+            lines[i] = String.format("20180101 23:%02d:%02d.000|1000|101|98|25|20|%s|TSTAT", 1 + i / 2, i % 2 * 30, values[i]);
+        }
+        File input = writeInput(lines);
+        File rules = writeInput("[ { \"type\": \"TREND\", \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\","
+                + " \"count\": 2, \"windowSeconds\": 120, \"leadSeconds\": 120 } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // From 98 at 23:05 the line crosses 101 within two minutes, and 99 at 23:05:30 confirms it.
+        // The readings past the limit don't count, so the episode ends two minutes after 23:05:30.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED HIGH TREND\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:05:00Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED HIGH TREND\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:07:30Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:05:00Z\",\"end\":\"2018-01-01T23:07:30Z\",\"duration\":\"PT2M30S\",\"peakRawValue\":100.0}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        String live = runApp("--live", "--rules", rules.getPath(), input.getPath());
+        assertEquals(output, "[" + String.join(",", live.split("\\R")) + "]" + NL);
+    }
+
+    public void testAnomalyRuleCatchesAJumpInsideTheLimits() throws Exception
+    {
+        String[] lines = new String[24];
+        for (int i = 0; i < lines.length; i++) {
+            // A reading every 30 seconds from 23:00, 60 and 61 in turn, and 65 for a minute and a half from 23:09.
+            double value = i >= 18 && i < 21 ? 65 : 60 + i % 2;
+            lines[i] = String.format("20180101 23:%02d:%02d.000|1000|101|98|25|20|%s|TSTAT", i / 2, i % 2 * 30, value);
+        }
+        File input = writeInput(lines);
+        File rules = writeInput("[ { \"type\": \"ANOMALY\", \"component\": \"TSTAT\", \"direction\": \"ABOVE\","
+                + " \"sigmas\": 3, \"count\": 2, \"windowSeconds\": 120 } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // The first 65 stands out from the baseline and the second still does, but by then the jump has widened
+        // the baseline enough for the third to fit in, so the episode ends two minutes after the second.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"ANOMALY HIGH\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:09:00Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"ANOMALY HIGH\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:11:00Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:09:00Z\",\"end\":\"2018-01-01T23:11:00Z\",\"duration\":\"PT2M\",\"peakRawValue\":65.0}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        String live = runApp("--live", "--rules", rules.getPath(), input.getPath());
+        assertEquals(output, "[" + String.join(",", live.split("\\R")) + "]" + NL);
+    }
+
+    public void testTandemRuleJoinsTheSatellitesOfAPair() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:01:30.000|1000|101|98|25|20|102.5|TSTAT",
+                "20180101 23:01:40.000|1001|101|98|25|20|101.5|TSTAT",
+                "20180101 23:01:45.000|1002|101|98|25|20|103.0|TSTAT",
+                "20180101 23:02:00.000|1001|101|98|25|20|101.8|TSTAT",
+                "20180101 23:02:05.000|1002|101|98|25|20|103.1|TSTAT",
+                "20180101 23:10:00.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:10:30.000|1000|101|98|25|20|102.5|TSTAT",
+                "20180101 23:12:00.000|1001|101|98|25|20|90.0|TSTAT");
+        File rules = writeInput("[ { \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\","
+                + " \"count\": 2, \"windowSeconds\": 60, \"pairs\": [[1000, 1001], [1001, 1003]] } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // 1000's first episode and 1001's overlap from 23:01:40. 1002 isn't in a pair, 1003 never violates,
+        // and 1000's second episode is on its own.
+        String tandem = "{\"sateliteId\":1000,\"pairedSateliteId\":1001,\"severity\":\"RED HIGH\",\"component\":\"TSTAT\","
+                + "\"timestamp\":\"2018-01-01T23:01:40Z\",\"status\":\"TANDEM\"}";
+        // After every group's alerts.
+        assertTrue(output.endsWith("}," + tandem + "]" + NL));
+        assertEquals(1, output.split("TANDEM", -1).length - 1);
+        // Streamed, the same alerts come out in the order they happened.
+        assertEquals(sortedAlerts(output, null), sortedAlerts(runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()), null));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        // Live, it goes out right after the alert that completes the pair.
+        String[] live = runApp("--live", "--rules", rules.getPath(), input.getPath()).split("\\R");
+        assertEquals(tandem, live[2]);
+        assertEquals(9, live.length);
+    }
+
+    public void testTandemAlertsAreTheSameLive() throws Exception
+    {
+        Random random = new Random(9);
+        String[] lines = new String[3_000];
+        long time = 1_514_847_600_000L;
+        for (int i = 0; i < lines.length; i++) {
+            time += random.nextInt(3) == 0 ? 0 : random.nextInt(20_000);
+            int satellite = 1000 + random.nextInt(3);
+            double value = random.nextInt(4) == 0 ? 102 : 95;
+            lines[i] = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss.SSS").withZone(ZoneOffset.UTC).format(Instant.ofEpochMilli(time))
+                    + "|" + satellite + "|101|98|25|20|" + value + "|TSTAT";
+        }
+        File input = writeInput(lines);
+        File rules = writeInput("[ { \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\","
+                + " \"count\": 2, \"windowSeconds\": 60, \"pairs\": [[1000, 1001], [1002, 1000]] } ]");
+
+        List<String> batch = sortedAlerts(runApp("--compact", "--rules", rules.getPath(), input.getPath()), "TANDEM");
+        List<String> live = sortedAlerts(runApp("--live", "--rules", rules.getPath(), input.getPath()), "TANDEM");
+        // The same pairs of episodes are found, live only in another order.
+        assertTrue(batch.size() > 10);
+        assertEquals(batch, live);
+    }
+
+    public void testCompoundRuleJoinsTheComponentsOfASatellite() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:01:10.000|1001|17|15|9|8|7.5|BATT",
+                "20180101 23:01:30.000|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:01:40.000|1001|17|15|9|8|7.4|BATT",
+                "20180101 23:01:50.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:02:10.000|1000|101|98|25|20|102.5|TSTAT",
+                "20180101 23:02:20.000|1001|101|98|25|20|95.0|TSTAT",
+                "20180101 23:05:00.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:05:20.000|1000|101|98|25|20|102.5|TSTAT",
+                "20180101 23:07:00.000|1000|17|15|9|8|12.0|BATT");
+        File rules = writeInput("[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"type\": \"COMPOUND\", \"components\": [\"BATT\", \"TSTAT\"] } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // Satellite 1000's thermostat runs hot from 23:01:50 while its battery is still low. 1001's thermostat is fine,
+        // and by 1000's second hot spell its battery is fine again.
+        String critical = "{\"sateliteId\":1000,\"severity\":\"CRITICAL\",\"component\":\"BATT+TSTAT\","
+                + "\"timestamp\":\"2018-01-01T23:01:50Z\",\"status\":\"COMPOUND\"}";
+        assertTrue(output.endsWith("}," + critical + "]" + NL));
+        assertEquals(1, output.split("CRITICAL", -1).length - 1);
+        // Streamed, the same alerts come out in the order they happened.
+        assertEquals(sortedAlerts(output, null), sortedAlerts(runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()), null));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        // Live, it goes out right after the alert of the episode that completes it.
+        String[] live = runApp("--live", "--rules", rules.getPath(), input.getPath()).split("\\R");
+        assertEquals(critical, live[4]);
+        assertEquals(9, live.length);
+    }
+
+    public void testCompoundRuleRaisesOneAlertPerOverlap() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|17|15|9|8|8.5|BATT",
+                "20180101 23:01:05.000|1000|101|98|25|20|99.0|TSTAT",
+                "20180101 23:01:10.000|1000|17|15|9|8|8.5|BATT",
+                "20180101 23:01:15.000|1000|101|98|25|20|99.0|TSTAT",
+                "20180101 23:01:20.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:01:30.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:01:40.000|1000|17|15|9|8|7.5|BATT",
+                "20180101 23:01:50.000|1000|17|15|9|8|7.5|BATT",
+                "20180101 23:01:50.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:02:10.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:02:30.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:02:41.000|1000|17|15|9|8|7.5|BATT",
+                "20180101 23:02:50.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:10:00.000|1000|17|15|9|8|7.5|BATT",
+                "20180101 23:10:05.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:10:10.000|1000|17|15|9|8|7.5|BATT",
+                "20180101 23:10:15.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:20:00.000|1000|17|15|9|8|12.0|BATT");
+        File rules = writeInput("[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"component\": \"BATT\", \"limit\": \"YELLOW_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"component\": \"TSTAT\", \"limit\": \"YELLOW_HIGH\", \"direction\": \"ABOVE\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"type\": \"COMPOUND\", \"components\": [\"BATT\", \"TSTAT\"] } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // The yellow episodes from 23:01:00 overlap, but only red ones count. The battery turns red at 23:01:40 while the
+        // thermostat is, and its second red episode (from 23:01:50, opened at 23:02:41) is part of the same overlap.
+        // Once both are back to normal, the overlap from 23:10:05 is a new one.
+        assertEquals(Arrays.asList(
+                "{\"sateliteId\":1000,\"severity\":\"CRITICAL\",\"component\":\"BATT+TSTAT\",\"timestamp\":\"2018-01-01T23:01:40Z\",\"status\":\"COMPOUND\"}",
+                "{\"sateliteId\":1000,\"severity\":\"CRITICAL\",\"component\":\"BATT+TSTAT\",\"timestamp\":\"2018-01-01T23:10:05Z\",\"status\":\"COMPOUND\"}"),
+                sortedAlerts(output, "COMPOUND"));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        assertEquals(sortedAlerts(output, null), sortedAlerts(runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()), null));
+        assertEquals(sortedAlerts(output, null), sortedAlerts(runApp("--live", "--rules", rules.getPath(), input.getPath()), null));
+    }
+
+    public void testCompoundAlertsAreTheSameLive() throws Exception
+    {
+        Random random = new Random(7);
+        String[] components = {"BATT", "TSTAT", "GYRO"};
+        String[] lines = new String[6_000];
+        long time = 1_514_847_600_000L;
+        for (int i = 0; i < lines.length; i++) {
+            time += random.nextInt(3) == 0 ? 0 : random.nextInt(15_000);
+            String component = components[random.nextInt(components.length)];
+            String limits = component.equals("BATT") ? "17|15|9|8|" + (random.nextInt(3) == 0 ? 7.5 : 12)
+                    : "101|98|25|20|" + (random.nextInt(3) == 0 ? 102 : 95);
+            lines[i] = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss.SSS").withZone(ZoneOffset.UTC).format(Instant.ofEpochMilli(time))
+                    + "|" + (1000 + random.nextInt(2)) + "|" + limits + "|" + component;
+        }
+        File input = writeInput(lines);
+        File rules = writeInput("[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"component\": \"BATT\", \"limit\": \"YELLOW_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 90 },"
+                + " { \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\", \"count\": 2, \"windowSeconds\": 60 },"
+                + " { \"component\": \"GYRO\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\", \"count\": 2, \"windowSeconds\": 30 },"
+                + " { \"type\": \"COMPOUND\", \"components\": [\"BATT\", \"TSTAT\"] },"
+                + " { \"type\": \"COMPOUND\", \"components\": [\"TSTAT\", \"GYRO\", \"BATT\"] } ]");
+
+        List<String> batch = sortedAlerts(runApp("--compact", "--rules", rules.getPath(), input.getPath()), "COMPOUND");
+        List<String> live = sortedAlerts(runApp("--live", "--rules", rules.getPath(), input.getPath()), "COMPOUND");
+        assertTrue(batch.toString().contains("TSTAT+GYRO+BATT"));
+        assertEquals(batch, live);
+    }
+
+    public void testSequenceRuleNeedsTheBandsInOrder() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:00.000|1000|101|98|25|20|99.0|TSTAT",
+                "20180101 23:01:00.000|1001|101|98|25|20|102.0|TSTAT",
+                "20180101 23:01:30.000|1000|101|98|25|20|100.0|TSTAT",
+                "20180101 23:02:00.000|1000|101|98|25|20|102.0|TSTAT",
+                "20180101 23:05:00.000|1000|101|98|25|20|95.0|TSTAT",
+                "20180101 23:06:00.000|1000|101|98|25|20|99.0|TSTAT",
+                "20180101 23:06:30.000|1000|101|98|25|20|95.0|TSTAT",
+                "20180101 23:07:00.000|1000|101|98|25|20|102.0|TSTAT");
+        File rules = writeInput("[ { \"type\": \"SEQUENCE\", \"component\": \"TSTAT\", \"sequence\": [\"YELLOW_HIGH\", \"RED_HIGH\"],"
+                + " \"withinSeconds\": 120, \"count\": 1, \"windowSeconds\": 60 } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // Only 1000's first climb goes yellow then red. 1001 jumps straight to red, and 1000's second climb
+        // drops back to normal before it gets there.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED HIGH SEQUENCE\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:02:00Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED HIGH SEQUENCE\",\"component\":\"TSTAT\",\"timestamp\":\"2018-01-01T23:03:00Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:02:00Z\",\"end\":\"2018-01-01T23:03:00Z\",\"duration\":\"PT1M\",\"peakRawValue\":102.0}]" + NL,
+                output);
+        assertEquals(output, runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()));
+        assertEquals(output, runApp("--parallel", "--compact", "--rules", rules.getPath(), input.getPath()));
+        String live = runApp("--live", "--rules", rules.getPath(), input.getPath());
+        assertEquals(output, "[" + String.join(",", live.split("\\R")) + "]" + NL);
+    }
+
+    public void testRulesFileReplacesBuiltInRules() throws Exception
+    {
+        File input = writeInput(
+                "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+                "20180101 23:01:38.001|1000|101|98|25|20|102.9|TSTAT",
+                "20180101 23:02:11.302|1000|17|15|9|8|7.7|BATT",
+                "20180101 23:03:03.008|1000|101|98|25|20|102.7|TSTAT",
+                "20180101 23:03:05.009|1000|101|98|25|20|101.2|TSTAT");
+        File rules = writeInput(
+                "[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 90 } ]");
+
+        String output = runApp("--compact", "--rules", rules.getPath(), input.getPath());
+
+        // Two low batteries within 90 seconds are enough now, and TSTAT has no rule at all.
+        // The file goes on past the end of the 90 seconds, so the alert is also resolved.
+        assertEquals("[{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\","
+                + "\"timestamp\":\"2018-01-01T23:01:09.521Z\"},"
+                + "{\"sateliteId\":1000,\"severity\":\"RED LOW\",\"component\":\"BATT\",\"timestamp\":\"2018-01-01T23:02:39.521Z\","
+                + "\"status\":\"RESOLVED\",\"start\":\"2018-01-01T23:01:09.521Z\",\"end\":\"2018-01-01T23:02:39.521Z\","
+                + "\"duration\":\"PT1M30S\",\"peakRawValue\":7.7}]" + NL, output);
+        assertEquals(output, runApp("--stream", "--compact", "--rules", rules.getPath(), input.getPath()));
+    }
+
+    // The alerts with the given status in a JSON array or in JSON lines, sorted.
+    private static List<String> sortedAlerts(String output, String status)
+    {
+        List<String> alerts = new ArrayList<>();
+        for (String alert : output.split("(?<=\\}),(?=\\{)|\\R")) {
+            if (status == null || alert.contains("\"" + status + "\"")) {
+                alerts.add(alert.replace("[", "").replace("]", "").trim());
+            }
+        }
+        Collections.sort(alerts);
+        return alerts;
+    }
+
+    static File writeInput(String... lines) throws IOException
+    {
+        File file = File.createTempFile("telemetry", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.US_ASCII);
+        return file;
+    }
+
+    // Runs the app on input it has to reject, and returns what it printed before it stopped.
+    static String runAppUntilItFails(String... args) throws Exception
+    {
+        PrintStream original = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+        try {
+            App.main(args);
+            fail("Expected the run to fail");
+        } catch (Exception expected) {
+            // The parallel path wraps the reader's exception in an ExecutionException. What we're after is the output.
+        } finally {
+            System.setOut(original);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static String runApp(String... args) throws Exception
+    {
+        PrintStream original = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+        try {
+            App.main(args);
+        } finally {
+            System.setOut(original);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
 }
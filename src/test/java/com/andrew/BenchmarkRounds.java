@@ -0,0 +1,53 @@
+package com.andrew;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * The timing loop the benchmarks under src/test share. Two ways of doing the same work run in turns, a few rounds
+ * to warm up the JIT first, and the median of the timed rounds is kept for each. Each way returns a number that
+ * depends on all of its work (a sum, a count), so the JIT can't skip any of it, and both have to return the same
+ * number every round, or it stops.
+ */
+final class BenchmarkRounds
+{
+    static final int WARMUP_ROUNDS = 5;
+    static final int ROUNDS = 15;
+
+    private BenchmarkRounds()
+    {
+    }
+
+    /**
+     * Runs both ways {@link #WARMUP_ROUNDS} + {@link #ROUNDS} times and returns the median time of the timed rounds
+     * of each, in nanoseconds: {first, second}. {@code what} names the number they return, for the message when
+     * they disagree.
+     */
+    static long[] compare(LongSupplier first, LongSupplier second, String what)
+    {
+        long[] firstTimes = new long[ROUNDS];
+        long[] secondTimes = new long[ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long firstResult = first.getAsLong();
+            long middle = System.nanoTime();
+            long secondResult = second.getAsLong();
+            long end = System.nanoTime();
+            if (firstResult != secondResult) {
+                throw new IllegalStateException("The two ways disagree on the " + what + ": " + firstResult + " and " + secondResult);
+            }
+            if (round >= 0) {
+                firstTimes[round] = middle - start;
+                secondTimes[round] = end - middle;
+            }
+        }
+        return new long[] {median(firstTimes), median(secondTimes)};
+    }
+
+    private static long median(long[] times)
+    {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
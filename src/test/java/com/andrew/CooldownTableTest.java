@@ -0,0 +1,44 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that repeat alerts inside a hold-off are counted instead of let out.
+ */
+public class CooldownTableTest extends TestCase
+{
+    public void testHoldsBackAlertsUntilTheCooldownIsOver()
+    {
+        CooldownTable cooldowns = new CooldownTable();
+
+        assertTrue(cooldowns.allow(0, 1_000, 60_000));
+        assertFalse(cooldowns.allow(0, 20_000, 60_000));
+        assertTrue(cooldowns.isSuppressed(0));
+        assertFalse(cooldowns.allow(0, 60_999, 60_000));
+        assertFalse(cooldowns.summaryDue(0, 60_999));
+        assertTrue(cooldowns.summaryDue(0, 61_000));
+        assertEquals(1_000, cooldowns.holdOffStart(0));
+        assertEquals(61_000, cooldowns.holdOffEnd(0));
+        assertEquals(2, cooldowns.takeSuppressed(0));
+        assertFalse(cooldowns.summaryDue(0, 61_000));
+
+        // Right at the end of the hold-off the next alert goes out and starts a new one.
+        assertTrue(cooldowns.allow(0, 61_000, 60_000));
+        assertFalse(cooldowns.isSuppressed(0));
+        assertEquals(121_000, cooldowns.holdOffEnd(0));
+    }
+
+    public void testNoCooldownLetsEveryAlertOut()
+    {
+        CooldownTable cooldowns = new CooldownTable();
+
+        for (int i = 0; i < 100; i++) {
+            // Keys far apart, so the table has to grow.
+            assertTrue(cooldowns.allow(i * 7, i, 0));
+            assertTrue(cooldowns.allow(i * 7, i, 0));
+            assertFalse(cooldowns.summaryDue(i * 7, Long.MAX_VALUE));
+        }
+        assertFalse(cooldowns.isSuppressed(5_000));
+        assertFalse(cooldowns.summaryDue(5_000, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,97 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Checks that the fast decimal parser gives exactly the same doubles as Double.parseDouble.
+ */
+public class DecimalParserTest extends TestCase
+{
+    public void testTelemetryValues()
+    {
+        String[] values = {"101", "98", "25", "20", "17", "15", "9", "8", "99.9", "7.8", "102.9", "87.9", "101.2", "7.7"};
+        for (String value : values) {
+            assertParsesLikeJdk(value);
+        }
+    }
+
+    public void testEdgeCases()
+    {
+        String[] values = {
+                "0", "-0", "+0", "0.0", "-0.0", "00012.50", "1.", ".5", "-.5", "+7.25",
+                "0.1", "0.2", "0.3", "0.000001", "123456789012345", "-999999999999999",
+                "9007199254740993", "1234567890.12345", "0.0000000000000000000001", "1.00000000000000000000000",
+        };
+        for (String value : values) {
+            assertParsesLikeJdk(value);
+        }
+    }
+
+    public void testUnusualInputFallsBackToJdk()
+    {
+        String[] values = {"1e3", "-2.5E-3", "NaN", "Infinity", "-Infinity", "0x1p3", "7d", "1.7976931348623157E308"};
+        for (String value : values) {
+            assertParsesLikeJdk(value);
+        }
+        assertRejectedLikeJdk("");
+        assertRejectedLikeJdk("-");
+        assertRejectedLikeJdk(".");
+        assertRejectedLikeJdk("1.2.3");
+        assertRejectedLikeJdk("12abc");
+    }
+
+    public void testRandomShortDecimals()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long unscaled = random.nextLong() % 1_000_000_000_000L;
+            int scale = random.nextInt(8);
+            assertParsesLikeJdk(BigDecimal.valueOf(unscaled, scale).toPlainString());
+        }
+    }
+
+    public void testLimitComparisonsAreUnchanged()
+    {
+        // The same bits on both sides means every < and > in AlertRule.classify gives the same answer.
+        String[] limits = {"8", "101", "98", "9"};
+        String[] values = {"7.9", "8.0", "8", "101.0", "101.00000000000001", "100.99999999999999", "98.1", "8.999999999999999"};
+        for (String limit : limits) {
+            for (String value : values) {
+                assertEquals(Double.parseDouble(value) < Double.parseDouble(limit), parse(value) < parse(limit));
+                assertEquals(Double.parseDouble(value) > Double.parseDouble(limit), parse(value) > parse(limit));
+            }
+        }
+    }
+
+    private static void assertParsesLikeJdk(String text)
+    {
+        assertEquals(text, Double.doubleToRawLongBits(Double.parseDouble(text)), Double.doubleToRawLongBits(parse(text)));
+    }
+
+    private static void assertRejectedLikeJdk(String text)
+    {
+        try {
+            Double.parseDouble(text);
+            fail("JDK accepted " + text);
+        } catch (NumberFormatException expected) {
+            // The fast parser has to reject it too.
+        }
+        try {
+            parse(text);
+            fail("Parser accepted " + text);
+        } catch (NumberFormatException expected) {
+            // Same exception type as the JDK.
+        }
+    }
+
+    private static double parse(String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return DecimalParser.parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
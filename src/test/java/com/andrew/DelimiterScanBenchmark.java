@@ -0,0 +1,123 @@
+package com.andrew;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Times the two ways the reader could find the '|' and '\n' of a window: looking at one byte at a time, like
+ * MappedTelemetryReader.parseLines does, and jumping from one to the next by checking 8 bytes at once inside a long
+ * ("SWAR", SIMD within a register). The byte loop stays in the reader until the other one beats it here.
+ *
+ * It's a plain main rather than a test, so the build doesn't run it. After {@code mvn test-compile}:
+ *
+ *   mvn exec:java -Dexec.mainClass="com.andrew.DelimiterScanBenchmark" -Dexec.classpathScope=test -Dexec.args="3000000"
+ *
+ * The argument is how many telemetry lines to time (1 million if it's left out). They are written to a temporary
+ * file and memory-mapped, like the reader does. Both ways are timed by {@link BenchmarkRounds}, and the median is
+ * printed for each, per line. Both have to find the same delimiters, or it stops.
+ */
+public class DelimiterScanBenchmark
+{
+    // One in every byte of a long, and the low 7 bits of every byte.
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long PIPES = '|' * ONES;
+    private static final long NEWLINES = '\n' * ONES;
+
+    public static void main(String[] args) throws Exception
+    {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = File.createTempFile("telemetry", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), randomLines(lines, new Random(1)).getBytes(StandardCharsets.US_ASCII));
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int limit = (int) channel.size();
+
+            long[] times = BenchmarkRounds.compare(() -> byByte(window, limit), () -> byWord(window, limit), "sum of the delimiter positions");
+            double bytePerLine = times[0] / (double) lines;
+            double wordPerLine = times[1] / (double) lines;
+            System.out.printf("byte by byte:     %.2f ns/line%n", bytePerLine);
+            System.out.printf("8 bytes at once:  %.2f ns/line%n", wordPerLine);
+            System.out.printf("speedup:          %.2fx%n", bytePerLine / wordPerLine);
+        }
+    }
+
+    // The loop parseLines has. Adds up the positions of the delimiters, so none can be skipped.
+    private static long byByte(ByteBuffer buffer, int limit)
+    {
+        long sum = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '|' || b == '\n') {
+                sum += i;
+            }
+        }
+        return sum;
+    }
+
+    // The same, but jumping from one delimiter to the next.
+    private static long byWord(ByteBuffer buffer, int limit)
+    {
+        long sum = 0;
+        for (int i = nextDelimiter(buffer, 0, limit); i < limit; i = nextDelimiter(buffer, i + 1, limit)) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the index of the first '|' or '\n' at or after {@code from}, or {@code limit} if there isn't one.
+     * XOR-ing a long with 8 pipes turns every pipe into a zero byte, and {@link #zeroBytes} marks the zero bytes.
+     * The buffer is big-endian, so the leading zeros of the marks say where the first one is.
+     */
+    private static int nextDelimiter(ByteBuffer buffer, int from, int limit)
+    {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            long marks = zeroBytes(word ^ PIPES) | zeroBytes(word ^ NEWLINES);
+            if (marks != 0) {
+                return i + (Long.numberOfLeadingZeros(marks) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '|' || b == '\n') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Returns a long with the high bit set in every byte that is zero in the given long, and nothing else. Adding
+     * 0x7F to the low 7 bits of a byte carries into its high bit unless they're all zero, and no carry goes from one
+     * byte into the next.
+     */
+    private static long zeroBytes(long word)
+    {
+        long carried = (word & LOW_BITS) + LOW_BITS;
+        return ~(carried | word | LOW_BITS);
+    }
+
+    private static String randomLines(int lines, Random random)
+    {
+        StringBuilder text = new StringBuilder(lines * 52);
+        for (int i = 0; i < lines; i++) {
+            boolean battery = random.nextBoolean();
+            text.append(String.format("20180101 23:%02d:%02d.%03d|%d|", i / 60_000 % 60, i / 1000 % 60, i % 1000, 1000 + random.nextInt(10)))
+                    .append(battery ? "17|15|9|8|" : "101|98|25|20|")
+                    .append(random.nextInt(1100) / 10.0)
+                    .append(battery ? "|BATT\n" : "|TSTAT\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.andrew;
+
+import java.util.Random;
+
+/**
+ * Times the two ways groupViolations can find the violations of the plain limit rules in a batch: classifying every
+ * row with every rule ({@link AlertRule#classify(TelemetryBatch, int)}), and scanning the rows into {@link LimitMasks}
+ * a block at a time and testing one bit per row and rule.
+ *
+ * It's a plain main rather than a test, so the build doesn't run it. After {@code mvn test-compile}:
+ *
+ *   mvn exec:java -Dexec.mainClass="com.andrew.LimitMasksBenchmark" -Dexec.classpathScope=test -Dexec.args="5000000"
+ *
+ * The argument is how many rows to time (2 million if it's left out). The rows are random BATT and TSTAT readings,
+ * spread over all the bands, checked against the built-in rules. Both ways are timed by {@link BenchmarkRounds},
+ * and the median is printed for each, per row. Both have to find the same number of violations, or it stops.
+ */
+public class LimitMasksBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        RuleTable rules = RuleTable.defaults();
+        TelemetryBatch batch = randomBatch(rows, new Random(1));
+
+        long[] times = BenchmarkRounds.compare(() -> scalar(batch, rules), () -> masked(batch, rules), "number of violations");
+        double scalarPerRow = times[0] / (double) rows;
+        double maskedPerRow = times[1] / (double) rows;
+        System.out.printf("classify every rule: %.2f ns/row%n", scalarPerRow);
+        System.out.printf("LimitMasks bands:    %.2f ns/row%n", maskedPerRow);
+        System.out.printf("speedup:             %.2fx%n", scalarPerRow / maskedPerRow);
+    }
+
+    // The loop groupViolations had before LimitMasks.
+    private static long scalar(TelemetryBatch batch, RuleTable rules)
+    {
+        long violations = 0;
+        for (int row = 0; row < batch.size; row++) {
+            for (AlertRule rule : rules.rulesFor(batch.components[row])) {
+                if (rule.classify(batch, row) == AlertRule.ENTER) {
+                    violations++;
+                }
+            }
+        }
+        return violations;
+    }
+
+    // The loop groupViolations has now.
+    private static long masked(TelemetryBatch batch, RuleTable rules)
+    {
+        LimitMasks masks = new LimitMasks();
+        long violations = 0;
+        for (int row = 0; row < batch.size; row++) {
+            if (row % LimitMasks.BLOCK_ROWS == 0) {
+                masks.scan(batch, row);
+            }
+            for (AlertRule rule : rules.rulesFor(batch.components[row])) {
+                byte kind = rule.masked ? (masks.test(rule.limit, row) ? AlertRule.ENTER : AlertRule.NONE) : rule.classify(batch, row);
+                if (kind == AlertRule.ENTER) {
+                    violations++;
+                }
+            }
+        }
+        return violations;
+    }
+
+    private static TelemetryBatch randomBatch(int rows, Random random)
+    {
+        TelemetryBatch batch = new TelemetryBatch(rows);
+        App.TelemetryRecord record = new App.TelemetryRecord();
+        for (int i = 0; i < rows; i++) {
+            boolean battery = random.nextBoolean();
+            record.component = battery ? "BATT" : "TSTAT";
+            record.componentCode = ComponentCodes.codeOf(record.component);
+            record.redHighLimit = battery ? 17 : 101;
+            record.yellowHighLimit = battery ? 15 : 98;
+            record.yellowLowLimit = battery ? 9 : 25;
+            record.redLowLimit = battery ? 8 : 20;
+            // From a little under the red low limit to a little over the red high one, so every band comes up.
+            record.rawValue = record.redLowLimit - 2 + random.nextDouble() * (record.redHighLimit - record.redLowLimit + 4);
+            batch.add(record);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,63 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks the bands of a batch against classifying every row with the limit rules one by one.
+ */
+public class LimitMasksTest extends TestCase
+{
+    public void testBelowMatchesTheCompare()
+    {
+        double[] values = {0.0, -0.0, 1.5, -1.5, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN, Double.longBitsToDouble(0xFFF8000000000000L)};
+        for (double a : values) {
+            for (double b : values) {
+                assertEquals(a + " < " + b, a < b ? 1 : 0, LimitMasks.below(a, b));
+            }
+        }
+    }
+
+    public void testBandsMatchTheLimitRules()
+    {
+        Random random = new Random(11);
+        // More than one block, with a part-filled last word.
+        TelemetryBatch batch = new TelemetryBatch(LimitMasks.BLOCK_ROWS * 2 + 100);
+        App.TelemetryRecord record = new App.TelemetryRecord();
+        for (int i = 0; i < LimitMasks.BLOCK_ROWS * 2 + 100; i++) {
+            record.redHighLimit = 101;
+            record.yellowHighLimit = 98;
+            record.yellowLowLimit = 25;
+            record.redLowLimit = 20;
+            // Mostly on or around the limits, so every band and every edge comes up.
+            double[] edges = {101, 98, 25, 20, Double.NaN};
+            record.rawValue = random.nextInt(4) == 0 ? edges[random.nextInt(edges.length)] : random.nextInt(1200) / 10.0;
+            batch.add(record);
+        }
+
+        AlertRule[] rules = new AlertRule[AlertRule.Limit.values().length];
+        for (AlertRule.Limit limit : AlertRule.Limit.values()) {
+            boolean high = limit == AlertRule.Limit.RED_HIGH || limit == AlertRule.Limit.YELLOW_HIGH;
+            AlertRule rule = new AlertRule();
+            rule.component = "TSTAT";
+            rule.limit = limit;
+            rule.direction = high ? AlertRule.Direction.ABOVE : AlertRule.Direction.BELOW;
+            rules[limit.ordinal()] = rule;
+        }
+        RuleTable table = RuleTable.of(rules);
+
+        LimitMasks masks = new LimitMasks();
+        for (int row = 0; row < batch.size; row++) {
+            if (row % LimitMasks.BLOCK_ROWS == 0) {
+                masks.scan(batch, row);
+            }
+            for (int id = 0; id < table.size(); id++) {
+                AlertRule rule = table.rule(id);
+                assertTrue(rule.masked);
+                assertEquals("row " + row + " " + rule, rule.classify(batch, row) == AlertRule.ENTER, masks.test(rule.limit, row));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the primitive key index against a plain HashMap.
+ */
+public class LongKeyIndexTest extends TestCase
+{
+    public void testIndexesFollowInsertionOrder()
+    {
+        LongKeyIndex index = new LongKeyIndex();
+        long batt = StreamKey.of(1000, ComponentCodes.codeOf("BATT"));
+        long tstat = StreamKey.of(1000, ComponentCodes.codeOf("TSTAT"));
+
+        assertEquals(-1, index.indexOf(batt));
+        assertEquals(0, index.add(batt));
+        assertEquals(1, index.add(tstat));
+        assertEquals(0, index.add(batt));
+        assertEquals(1, index.indexOf(tstat));
+        assertEquals(2, index.size());
+        assertEquals(tstat, index.key(1));
+    }
+
+    public void testManyKeysThroughRehashing()
+    {
+        LongKeyIndex index = new LongKeyIndex(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            // Few satellites and components, plus some arbitrary (even negative) keys.
+            long key = i % 3 == 0 ? random.nextLong() : StreamKey.of(random.nextInt(5000), (short) random.nextInt(40));
+            Integer known = expected.get(key);
+            int actual = index.add(key);
+            if (known == null) {
+                assertEquals(expected.size(), actual);
+                expected.put(key, actual);
+            } else {
+                assertEquals(known.intValue(), actual);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), index.indexOf(entry.getKey()));
+            assertEquals(entry.getKey().longValue(), index.key(entry.getValue()));
+        }
+    }
+
+    public void testStreamKeyRoundTrip()
+    {
+        long key = StreamKey.of(-12345, (short) 31000);
+
+        assertEquals(-12345, StreamKey.satelliteId(key));
+        assertEquals((short) 31000, StreamKey.code(key));
+    }
+}
@@ -0,0 +1,190 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the byte-level reader gives the same records as splitting each line with {@code String.split}, the way
+ * lines used to be read (see {@link #parse}).
+ */
+public class MappedTelemetryReaderTest extends TestCase
+{
+    private static final String[] LINES = {
+            "20180101 23:01:05.001|1001|101|98|25|20|99.9|TSTAT",
+            "20180101 23:01:09.521|1000|17|15|9|8|7.8|BATT",
+            " 20191231 23:59:59.999 | 1002 | 101.5 | 98 | 25 | -20.25 | -3 | TSTAT ",
+            "20200229 00:00:00.000|-7|1e3|98|25|20|0.1|BATT",
+    };
+
+    public void testMatchesStringParser() throws Exception
+    {
+        // Windows line endings, a blank line and no newline at the very end.
+        String content = LINES[0] + "\r\n" + LINES[1] + "\r\n\r\n" + LINES[2] + "\n" + LINES[3];
+        List<App.TelemetryRecord> records = read(content);
+
+        assertEquals(LINES.length, records.size());
+        for (int i = 0; i < LINES.length; i++) {
+            assertSameRecord(parse(LINES[i]), records.get(i));
+        }
+    }
+
+    public void testComponentNamesAreShared() throws Exception
+    {
+        List<App.TelemetryRecord> records = read(LINES[0] + "\n" + LINES[1] + "\n" + LINES[0] + "\n");
+
+        assertSame(records.get(0).component, records.get(2).component);
+    }
+
+    public void testRejectsWrongFieldCount() throws Exception
+    {
+        try {
+            read("20180101 23:01:05.001|1001|101|98|25|20|99.9\n");
+            fail("Expected the short record to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Invalid telemetry record"));
+        }
+    }
+
+    public void testTrailingPipesAreDroppedLikeStringSplit() throws Exception
+    {
+        // Empty fields at the end don't count, so an extra pipe after the component is fine, with or without '\r'.
+        List<App.TelemetryRecord> records = read(LINES[0] + "|\n" + LINES[1] + "||\r\n");
+        assertEquals(2, records.size());
+        assertSameRecord(parse(LINES[0] + "|"), records.get(0));
+        assertSameRecord(parse(LINES[1]), records.get(1));
+
+        // But an empty component is a missing field, for both parsers.
+        String noComponent = "20180101 23:01:05.001|1001|101|98|25|20|99.9|";
+        try {
+            parse(noComponent);
+            fail("Expected the record without a component to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Invalid telemetry record"));
+        }
+        try {
+            read(noComponent + "\n");
+            fail("Expected the record without a component to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Invalid telemetry record"));
+        }
+    }
+
+    public void testRangesCoverEveryRecordOnce() throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append(LINES[i % LINES.length]).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        File file = write(content.toString());
+        List<App.TelemetryRecord> expected = read(content.toString());
+
+        for (int parts : new int[] {1, 2, 3, 16, 1000, 20000}) {
+            long[] boundaries = MappedTelemetryReader.split(file.toPath(), parts);
+            assertEquals(0, boundaries[0]);
+            assertEquals(file.length(), boundaries[parts]);
+
+            List<App.TelemetryRecord> records = new ArrayList<>();
+            for (int i = 0; i < parts; i++) {
+                assertTrue(boundaries[i] <= boundaries[i + 1]);
+                MappedTelemetryReader.read(file.toPath(), boundaries[i], boundaries[i + 1], record -> records.add(copy(record)));
+            }
+            assertEquals(expected.size(), records.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSameRecord(expected.get(i), records.get(i));
+            }
+        }
+    }
+
+    public void testStreamInputInSmallPieces() throws Exception
+    {
+        String content = LINES[0] + "\r\n" + LINES[1] + "\n\n" + LINES[2] + "\n" + LINES[3];
+        // A stream that never hands out more than 7 bytes at a time, so lines arrive in pieces.
+        InputStream in = new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+
+        List<App.TelemetryRecord> records = new ArrayList<>();
+        MappedTelemetryReader.read(in, record -> records.add(copy(record)));
+
+        assertEquals(LINES.length, records.size());
+        for (int i = 0; i < LINES.length; i++) {
+            assertSameRecord(parse(LINES[i]), records.get(i));
+        }
+    }
+
+    private static List<App.TelemetryRecord> read(String content) throws Exception
+    {
+        File file = write(content);
+        List<App.TelemetryRecord> records = new ArrayList<>();
+        MappedTelemetryReader.read(file.toPath(), record -> records.add(copy(record)));
+        return records;
+    }
+
+    private static File write(String content) throws Exception
+    {
+        File file = File.createTempFile("telemetry", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    /**
+     * The String-based parser the reader replaced, kept here as the reference it has to agree with.
+     */
+    private static App.TelemetryRecord parse(String line)
+    {
+        String[] parts = line.split("\\|");
+        if (parts.length != MappedTelemetryReader.FIELD_COUNT) {
+            throw new IllegalArgumentException("Invalid telemetry record: " + line);
+        }
+        App.TelemetryRecord record = new App.TelemetryRecord();
+        record.timestamp = App.TelemetryRecord.parseTimestamp(parts[0].trim());
+        record.sateliteId = Integer.parseInt(parts[1].trim());
+        record.redHighLimit = Double.parseDouble(parts[2].trim());
+        record.yellowHighLimit = Double.parseDouble(parts[3].trim());
+        record.yellowLowLimit = Double.parseDouble(parts[4].trim());
+        record.redLowLimit = Double.parseDouble(parts[5].trim());
+        record.rawValue = Double.parseDouble(parts[6].trim());
+        record.component = parts[7].trim();
+        record.componentCode = ComponentCodes.codeOf(record.component);
+        return record;
+    }
+
+    // The reader hands out the same record for every line, so the ones we keep have to be copied.
+    private static App.TelemetryRecord copy(App.TelemetryRecord record)
+    {
+        App.TelemetryRecord copy = new App.TelemetryRecord();
+        copy.timestamp = record.timestamp;
+        copy.sateliteId = record.sateliteId;
+        copy.redHighLimit = record.redHighLimit;
+        copy.yellowHighLimit = record.yellowHighLimit;
+        copy.yellowLowLimit = record.yellowLowLimit;
+        copy.redLowLimit = record.redLowLimit;
+        copy.rawValue = record.rawValue;
+        copy.component = record.component;
+        copy.componentCode = record.componentCode;
+        return copy;
+    }
+
+    private static void assertSameRecord(App.TelemetryRecord expected, App.TelemetryRecord actual)
+    {
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.sateliteId, actual.sateliteId);
+        assertEquals(expected.redHighLimit, actual.redHighLimit, 0.0);
+        assertEquals(expected.yellowHighLimit, actual.yellowHighLimit, 0.0);
+        assertEquals(expected.yellowLowLimit, actual.yellowLowLimit, 0.0);
+        assertEquals(expected.redLowLimit, actual.redLowLimit, 0.0);
+        assertEquals(expected.rawValue, actual.rawValue, 0.0);
+        assertEquals(expected.component, actual.component);
+    }
+}
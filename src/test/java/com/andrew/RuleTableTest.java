@@ -0,0 +1,178 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Checks that the rules file is compiled into the right per-component dispatch table.
+ */
+public class RuleTableTest extends TestCase
+{
+    public void testDefaultRulesCheckRedAndYellowLimits() throws Exception
+    {
+        RuleTable rules = RuleTable.defaults();
+        App.TelemetryRecord battery = record("BATT", 17, 15, 9, 8, 7.8);
+        App.TelemetryRecord thermostat = record("TSTAT", 101, 98, 25, 20, 102.9);
+
+        AlertRule[] batteryRules = rules.rulesFor(battery.componentCode);
+        assertEquals(2, batteryRules.length);
+        assertEquals("RED LOW", batteryRules[0].severity());
+        assertEquals("YELLOW LOW", batteryRules[1].severity());
+        assertEquals(3, batteryRules[0].count);
+        assertEquals(5 * 60_000L, batteryRules[0].windowMillis);
+        // A red reading only counts for the red rule.
+        assertTrue(violates(batteryRules[0], battery));
+        assertFalse(violates(batteryRules[1], battery));
+        // Between the red and yellow limits only the yellow rule applies, and exactly on a limit is fine.
+        battery.rawValue = 8.5;
+        assertFalse(violates(batteryRules[0], battery));
+        assertTrue(violates(batteryRules[1], battery));
+        battery.rawValue = battery.redLowLimit;
+        assertFalse(violates(batteryRules[0], battery));
+        assertTrue(violates(batteryRules[1], battery));
+        battery.rawValue = battery.yellowLowLimit;
+        assertFalse(violates(batteryRules[1], battery));
+
+        AlertRule[] thermostatRules = rules.rulesFor(thermostat.componentCode);
+        assertEquals(2, thermostatRules.length);
+        assertEquals("RED HIGH", thermostatRules[0].severity());
+        assertEquals("YELLOW HIGH", thermostatRules[1].severity());
+        assertTrue(violates(thermostatRules[0], thermostat));
+        assertFalse(violates(thermostatRules[1], thermostat));
+        thermostat.rawValue = 99.9;
+        assertFalse(violates(thermostatRules[0], thermostat));
+        assertTrue(violates(thermostatRules[1], thermostat));
+
+        // Other components have no rules.
+        assertEquals(0, rules.rulesFor(ComponentCodes.codeOf("GYRO")).length);
+    }
+
+    public void testLoadsRulesFile() throws Exception
+    {
+        File file = write("[ { \"component\": \"TSTAT\", \"limit\": \"YELLOW_LOW\", \"direction\": \"BELOW\", \"count\": 2, \"windowSeconds\": 60 },"
+                + "  { \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\", \"severity\": \"OVERHEAT\" } ]");
+        RuleTable rules = RuleTable.load(file.toPath());
+
+        AlertRule[] thermostatRules = rules.rulesFor(ComponentCodes.codeOf("TSTAT"));
+        assertEquals(2, thermostatRules.length);
+        assertEquals(0, thermostatRules[0].id);
+        assertEquals("YELLOW LOW", thermostatRules[0].severity());
+        assertEquals(60_000L, thermostatRules[0].windowMillis);
+        // Missing count and window fall back to 3 in 5 minutes.
+        assertEquals(3, thermostatRules[1].count);
+        assertEquals(300_000L, thermostatRules[1].windowMillis);
+        assertEquals("OVERHEAT", thermostatRules[1].severity());
+        assertSame(thermostatRules[1], rules.rule(1));
+        assertEquals(3, rules.maxCount());
+        assertEquals(0, rules.rulesFor(ComponentCodes.codeOf("BATT")).length);
+    }
+
+    public void testMarginsClassifyReadingsNearTheLimit() throws Exception
+    {
+        File file = write("[ { \"component\": \"BATT\", \"limit\": \"YELLOW_LOW\", \"direction\": \"BELOW\", \"enterMargin\": 0.2, \"exitMargin\": 0.5 } ]");
+        AlertRule rule = RuleTable.load(file.toPath()).rule(0);
+        App.TelemetryRecord battery = record("BATT", 17, 15, 9, 8, 8.7);
+
+        // Starting to violate takes a reading below 9 - 0.2, stopping takes one at or above 9 + 0.5.
+        assertEquals(AlertRule.ENTER, rule.classify(battery));
+        battery.rawValue = 9.1;
+        assertEquals(AlertRule.HOLD, rule.classify(battery));
+        assertFalse(violates(rule, battery));
+        battery.rawValue = 9.5;
+        assertEquals(AlertRule.CLEAR, rule.classify(battery));
+        // A red reading belongs to the red rule and leaves the yellow state alone.
+        battery.rawValue = 7.5;
+        assertEquals(AlertRule.NONE, rule.classify(battery));
+
+        ViolationWindowDetector detector = new ViolationWindowDetector(3);
+        int index = detector.index(7);
+        assertFalse(detector.applyHysteresis(index, AlertRule.HOLD));
+        assertTrue(detector.applyHysteresis(index, AlertRule.ENTER));
+        assertTrue(detector.applyHysteresis(index, AlertRule.HOLD));
+        assertFalse(detector.applyHysteresis(index, AlertRule.CLEAR));
+        assertFalse(detector.applyHysteresis(index, AlertRule.HOLD));
+    }
+
+    public void testRejectsIncompleteRule() throws Exception
+    {
+        try {
+            RuleTable.load(write("[ { \"component\": \"BATT\", \"direction\": \"BELOW\" } ]").toPath());
+            fail("Expected the rule without a limit to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("limit"));
+        }
+        try {
+            RuleTable.load(write("[ { \"type\": \"TREND\", \"component\": \"TSTAT\", \"limit\": \"RED_HIGH\", \"direction\": \"ABOVE\" } ]").toPath());
+            fail("Expected the trend rule without a lead time to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("lead time"));
+        }
+        try {
+            RuleTable.load(write("[ { \"type\": \"ANOMALY\", \"component\": \"TSTAT\", \"direction\": \"ABOVE\", \"sigmas\": 0 } ]").toPath());
+            fail("Expected the anomaly rule without sigmas to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("sigmas"));
+        }
+        try {
+            RuleTable.load(write("[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\" },"
+                    + " { \"type\": \"COMPOUND\", \"components\": [\"BATT\", \"TSTAT\"] } ]").toPath());
+            fail("Expected the compound rule of a component without rules to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("without red limit rules"));
+        }
+        try {
+            RuleTable.load(write("[ { \"component\": \"BATT\", \"limit\": \"RED_LOW\", \"direction\": \"BELOW\" },"
+                    + " { \"component\": \"TSTAT\", \"limit\": \"YELLOW_HIGH\", \"direction\": \"ABOVE\" },"
+                    + " { \"type\": \"COMPOUND\", \"components\": [\"BATT\", \"TSTAT\"] } ]").toPath());
+            fail("Expected the compound rule of a component with only a yellow rule to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("without red limit rules"));
+        }
+        try {
+            RuleTable.load(write("[ { \"type\": \"SEQUENCE\", \"component\": \"TSTAT\", \"sequence\": [\"YELLOW_HIGH\", \"YELLOW_HIGH\"],"
+                    + " \"withinSeconds\": 120 } ]").toPath());
+            fail("Expected the sequence rule with a band twice in a row to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Sequence rule"));
+        }
+        // A sequence rule needs neither a limit nor a direction, and is named after its last band.
+        RuleTable sequence = RuleTable.load(write("[ { \"type\": \"SEQUENCE\", \"component\": \"TSTAT\","
+                + " \"sequence\": [\"YELLOW_HIGH\", \"RED_HIGH\"], \"withinSeconds\": 120 } ]").toPath());
+        assertEquals("RED HIGH SEQUENCE", sequence.rule(0).severity());
+        // An anomaly rule doesn't need a limit.
+        RuleTable anomaly = RuleTable.load(write("[ { \"type\": \"ANOMALY\", \"component\": \"TSTAT\", \"direction\": \"BELOW\" } ]").toPath());
+        assertEquals("ANOMALY LOW", anomaly.rule(0).severity());
+    }
+
+    private static App.TelemetryRecord record(String component, double redHigh, double yellowHigh, double yellowLow, double redLow,
+                                              double rawValue)
+    {
+        App.TelemetryRecord record = new App.TelemetryRecord();
+        record.sateliteId = 1000;
+        record.component = component;
+        record.componentCode = ComponentCodes.codeOf(component);
+        record.redHighLimit = redHigh;
+        record.yellowHighLimit = yellowHigh;
+        record.yellowLowLimit = yellowLow;
+        record.redLowLimit = redLow;
+        record.rawValue = rawValue;
+        return record;
+    }
+
+    // Whether the reading breaks the rule on its own, without looking at any earlier readings.
+    private static boolean violates(AlertRule rule, App.TelemetryRecord record)
+    {
+        return rule.classify(record) == AlertRule.ENTER;
+    }
+
+    private static File write(String content) throws Exception
+    {
+        File file = File.createTempFile("rules", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,70 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks which runs of bands complete a sequence pattern, and which ones break it off.
+ */
+public class SequenceTableTest extends TestCase
+{
+    private static final long START = 1_514_847_600_000L;
+
+    private static final int NORMAL = AlertRule.Band.NORMAL.ordinal();
+    private static final int YELLOW = AlertRule.Band.YELLOW_HIGH.ordinal();
+    private static final int RED = AlertRule.Band.RED_HIGH.ordinal();
+
+    public void testPatternCompletesWithinItsTime()
+    {
+        AlertRule rule = sequenceRule(120, AlertRule.Band.YELLOW_HIGH, AlertRule.Band.RED_HIGH);
+        SequenceTable sequences = new SequenceTable();
+
+        assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, START, YELLOW));
+        // Staying yellow keeps the match going.
+        assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, START + 30_000, YELLOW));
+        assertEquals(AlertRule.ENTER, sequences.classify(0, rule, START + 60_000, RED));
+        // Staying red isn't a second match.
+        assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, START + 90_000, RED));
+    }
+
+    public void testRecoveryOrSkippingAStepBreaksTheMatch()
+    {
+        AlertRule rule = sequenceRule(120, AlertRule.Band.YELLOW_HIGH, AlertRule.Band.RED_HIGH);
+        SequenceTable sequences = new SequenceTable();
+
+        sequences.classify(0, rule, START, YELLOW);
+        assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, START + 30_000, NORMAL));
+        assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, START + 60_000, RED));
+
+        // Straight to red from normal isn't the pattern either.
+        sequences.classify(1, rule, START, NORMAL);
+        assertEquals(AlertRule.CLEAR, sequences.classify(1, rule, START + 30_000, RED));
+    }
+
+    public void testLatestStartKeepsTheMatchInTime()
+    {
+        AlertRule rule = sequenceRule(120, AlertRule.Band.NORMAL, AlertRule.Band.YELLOW_HIGH, AlertRule.Band.RED_HIGH);
+        SequenceTable sequences = new SequenceTable();
+
+        // Normal for a long time: the match starts again with every normal reading, so it's the last one that counts.
+        for (int i = 0; i < 10; i++) {
+            assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, START + i * 60_000L, NORMAL));
+        }
+        long time = START + 9 * 60_000L;
+        assertEquals(AlertRule.CLEAR, sequences.classify(0, rule, time + 60_000, YELLOW));
+        assertEquals(AlertRule.ENTER, sequences.classify(0, rule, time + 120_000, RED));
+
+        // Taking longer than the rule's time from the first step is too slow.
+        sequences.classify(1, rule, START, NORMAL);
+        sequences.classify(1, rule, START + 60_000, YELLOW);
+        assertEquals(AlertRule.CLEAR, sequences.classify(1, rule, START + 121_000, RED));
+    }
+
+    private static AlertRule sequenceRule(long withinSeconds, AlertRule.Band... sequence)
+    {
+        AlertRule rule = new AlertRule();
+        rule.type = AlertRule.Type.SEQUENCE;
+        rule.sequence = sequence;
+        rule.withinMillis = withinSeconds * 1000;
+        return rule;
+    }
+}
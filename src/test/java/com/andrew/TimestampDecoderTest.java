@@ -0,0 +1,135 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Checks the hand-written timestamp decoder field by field against the original formatter.
+ */
+public class TimestampDecoderTest extends TestCase
+{
+    private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss.SSS");
+
+    public void testSampleTimestamp()
+    {
+        assertDecodesLikeFormatter(new TimestampDecoder(), "20180101 23:01:05.001");
+    }
+
+    public void testLeapDays()
+    {
+        TimestampDecoder decoder = new TimestampDecoder();
+        assertDecodesLikeFormatter(decoder, "20160229 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "20160229 23:59:59.999");
+        assertDecodesLikeFormatter(decoder, "20160301 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "20000229 12:00:00.500");
+        assertDecodesLikeFormatter(decoder, "24000229 12:00:00.500");
+        // 2100 is not a leap year, so the day after February 28 is March 1.
+        assertDecodesLikeFormatter(decoder, "21000228 23:59:59.999");
+        assertDecodesLikeFormatter(decoder, "21000301 00:00:00.000");
+    }
+
+    public void testYearBoundaries()
+    {
+        TimestampDecoder decoder = new TimestampDecoder();
+        assertDecodesLikeFormatter(decoder, "20181231 23:59:59.999");
+        assertDecodesLikeFormatter(decoder, "20190101 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "19691231 23:59:59.999");
+        assertDecodesLikeFormatter(decoder, "19700101 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "19700101 00:00:00.001");
+        assertDecodesLikeFormatter(decoder, "19991231 23:59:59.999");
+        assertDecodesLikeFormatter(decoder, "20000101 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "00010101 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "99991231 23:59:59.999");
+    }
+
+    public void testEveryDayFrom1900To2100()
+    {
+        // Going forward one day at a time also changes the cached day on every call.
+        TimestampDecoder decoder = new TimestampDecoder();
+        DateTimeFormatter dayFormatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+        for (LocalDate day = LocalDate.of(1900, 1, 1); day.getYear() <= 2100; day = day.plusDays(1)) {
+            String date = day.format(dayFormatter);
+            assertDecodesLikeFormatter(decoder, date + " 00:00:00.000");
+            assertDecodesLikeFormatter(decoder, date + " 13:37:42.123");
+        }
+    }
+
+    public void testCachedDayIsReusedAndReplaced()
+    {
+        TimestampDecoder decoder = new TimestampDecoder();
+        assertDecodesLikeFormatter(decoder, "20180101 23:01:05.001");
+        assertDecodesLikeFormatter(decoder, "20180101 23:59:59.999");
+        assertDecodesLikeFormatter(decoder, "20180102 00:00:00.000");
+        assertDecodesLikeFormatter(decoder, "20180101 23:01:05.001");
+        // The decoder starts out with 1970-01-01 cached.
+        assertDecodesLikeFormatter(new TimestampDecoder(), "19700101 10:00:00.000");
+    }
+
+    public void testUnusualInputFallsBackToFormatter()
+    {
+        TimestampDecoder decoder = new TimestampDecoder();
+        // The formatter resolves February 30 to the last day of February.
+        assertDecodesLikeFormatter(decoder, "20190230 10:00:00.000");
+        // ...and midnight at the end of a day to the start of the next one.
+        assertDecodesLikeFormatter(decoder, "20181231 24:00:00.000");
+        assertRejectedLikeFormatter(decoder, "20181301 10:00:00.000");
+        assertRejectedLikeFormatter(decoder, "20180101 24:00:00.001");
+        assertRejectedLikeFormatter(decoder, "20180101 23:60:00.000");
+        assertRejectedLikeFormatter(decoder, "20180101T23:01:05.001");
+        assertRejectedLikeFormatter(decoder, "2018010 23:01:05.001");
+        assertRejectedLikeFormatter(decoder, "2018-1-1 23:01:05.001");
+    }
+
+    public void testDecodesInsideLargerBuffer()
+    {
+        byte[] bytes = "xx|20180101 23:01:05.001|1001".getBytes(StandardCharsets.US_ASCII);
+        long expected = LocalDateTime.parse("20180101 23:01:05.001", INPUT_FORMATTER).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        assertEquals(expected, new TimestampDecoder().decode(ByteBuffer.wrap(bytes), 3, 24));
+    }
+
+    private static void assertDecodesLikeFormatter(TimestampDecoder decoder, String text)
+    {
+        LocalDateTime expected = LocalDateTime.parse(text, INPUT_FORMATTER);
+        LocalDateTime actual = LocalDateTime.ofEpochSecond(
+                Math.floorDiv(decode(decoder, text), 1000L), (int) Math.floorMod(decode(decoder, text), 1000L) * 1_000_000, ZoneOffset.UTC);
+
+        assertEquals(text, expected.getYear(), actual.getYear());
+        assertEquals(text, expected.getMonthValue(), actual.getMonthValue());
+        assertEquals(text, expected.getDayOfMonth(), actual.getDayOfMonth());
+        assertEquals(text, expected.getHour(), actual.getHour());
+        assertEquals(text, expected.getMinute(), actual.getMinute());
+        assertEquals(text, expected.getSecond(), actual.getSecond());
+        assertEquals(text, expected.getNano(), actual.getNano());
+        assertEquals(text, expected.toInstant(ZoneOffset.UTC).toEpochMilli(), decode(decoder, text));
+    }
+
+    private static void assertRejectedLikeFormatter(TimestampDecoder decoder, String text)
+    {
+        try {
+            LocalDateTime.parse(text, INPUT_FORMATTER);
+            fail("Formatter accepted " + text);
+        } catch (DateTimeParseException expected) {
+            // The decoder has to reject it too.
+        }
+        try {
+            decode(decoder, text);
+            fail("Decoder accepted " + text);
+        } catch (DateTimeParseException expected) {
+            // Same exception type as the formatter.
+        }
+    }
+
+    private static long decode(TimestampDecoder decoder, String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return decoder.decode(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
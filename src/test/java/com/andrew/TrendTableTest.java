@@ -0,0 +1,82 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks the running trend line against fitting it again from every reading in the window.
+ */
+public class TrendTableTest extends TestCase
+{
+    private static final long START = 1_514_847_600_000L;
+
+    public void testRisingThermostatIsCaughtBeforeTheLimit()
+    {
+        AlertRule rule = trendRule(120, 240);
+        TrendTable trends = new TrendTable();
+
+        // 2 degrees a minute from 90, with a red high limit of 101.
+        assertEquals(AlertRule.CLEAR, trends.classify(0, rule, START, 90, 101));
+        assertEquals(AlertRule.CLEAR, trends.classify(0, rule, START + 60_000, 92, 101));
+        assertEquals(2.0 / 60, trends.slope(0), 1e-12);
+        // At 92 the line only reaches 100 in four minutes, at 94 it reaches 102.
+        assertEquals(AlertRule.ENTER, trends.classify(0, rule, START + 120_000, 94, 101));
+        // Past the limit is for the limit rule.
+        assertEquals(AlertRule.CLEAR, trends.classify(0, rule, START + 180_000, 102, 101));
+        // Falling again.
+        assertEquals(AlertRule.CLEAR, trends.classify(0, rule, START + 240_000, 80, 101));
+    }
+
+    public void testMatchesFittingTheWindowAgain()
+    {
+        Random random = new Random(11);
+        AlertRule rule = trendRule(120, 60);
+        TrendTable trends = new TrendTable();
+        int n = 5_000;
+        long[] timestamps = new long[n];
+        double[] values = new double[n];
+        long time = START;
+        for (int i = 0; i < n; i++) {
+            time += random.nextInt(6) == 0 ? 0 : random.nextInt(random.nextInt(20) == 0 ? 200_000 : 30_000);
+            timestamps[i] = time;
+            values[i] = 50 + Math.sin(i / 50.0) * 20 + random.nextGaussian();
+            trends.classify(0, rule, time, values[i], 1_000);
+
+            double sumTime = 0;
+            double sumValue = 0;
+            int count = 0;
+            for (int j = i; j >= 0 && timestamps[j] >= time - rule.windowMillis; j--) {
+                sumTime += (timestamps[j] - START) / 1000.0;
+                sumValue += values[j];
+                count++;
+            }
+            double meanTime = sumTime / count;
+            double meanValue = sumValue / count;
+            double squares = 0;
+            double products = 0;
+            for (int j = i; j > i - count; j--) {
+                double t = (timestamps[j] - START) / 1000.0 - meanTime;
+                squares += t * t;
+                products += t * (values[j] - meanValue);
+            }
+
+            if (timestamps[i - count + 1] == time) {
+                assertTrue(Double.isNaN(trends.slope(0)));
+            } else {
+                assertEquals(products / squares, trends.slope(0), 1e-6 * Math.max(1, Math.abs(products / squares)));
+            }
+        }
+    }
+
+    private static AlertRule trendRule(long windowSeconds, long leadSeconds)
+    {
+        AlertRule rule = new AlertRule();
+        rule.type = AlertRule.Type.TREND;
+        rule.limit = AlertRule.Limit.RED_HIGH;
+        rule.direction = AlertRule.Direction.ABOVE;
+        rule.windowMillis = windowSeconds * 1000;
+        rule.leadMillis = leadSeconds * 1000;
+        return rule;
+    }
+}
@@ -0,0 +1,176 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the ring buffer detector against a from-scratch count of the violations in the window.
+ */
+public class ViolationWindowDetectorTest extends TestCase
+{
+    private static final long WINDOW = 5 * 60_000L;
+
+    public void testSampleBatteryViolations()
+    {
+        ViolationWindowDetector detector = new ViolationWindowDetector(3);
+        long key = StreamKey.of(1000, (short) 0);
+
+        assertFalse(add(detector, key, 1_000, 3));
+        assertFalse(add(detector, key, 62_000, 3));
+        assertTrue(add(detector, key, 182_000, 3));
+        assertEquals(1_000, detector.alertTimestamp(0));
+        // Still the same episode.
+        assertFalse(add(detector, key, 183_000, 3));
+        assertEquals(1_000, detector.alertTimestamp(0));
+    }
+
+    public void testWindowEdgeIsInclusive()
+    {
+        ViolationWindowDetector detector = new ViolationWindowDetector(3);
+
+        assertFalse(add(detector, 1, 0, 3));
+        assertFalse(add(detector, 1, 1, 3));
+        assertTrue(add(detector, 1, WINDOW, 3));
+
+        assertFalse(add(detector, 2, 0, 3));
+        assertFalse(add(detector, 2, 1, 3));
+        assertFalse(add(detector, 2, WINDOW + 1, 3));
+        assertEquals(ViolationWindowDetector.NO_ALERT, detector.alertTimestamp(1));
+    }
+
+    public void testNewEpisodeAfterTheRuleStopsHolding()
+    {
+        ViolationWindowDetector detector = new ViolationWindowDetector(3);
+
+        assertFalse(add(detector, 1, 0, 3));
+        assertFalse(add(detector, 1, 60_000, 3));
+        assertTrue(add(detector, 1, 120_000, 3));
+        // Still three within 5 minutes at every point in time, so it's the same episode.
+        assertFalse(add(detector, 1, 290_000, 3));
+        assertFalse(add(detector, 1, 360_000, 3));
+        // The last three (120s, 290s, 360s) held until 420s, so the rule stopped holding before 900s,
+        // and the violation that makes three again opens a second episode.
+        assertFalse(add(detector, 1, 900_000, 3));
+        assertFalse(add(detector, 1, 901_000, 3));
+        assertTrue(add(detector, 1, 902_000, 3));
+        assertEquals(900_000, detector.alertTimestamp(0));
+    }
+
+    public void testGapOfOneMillisecondEndsTheEpisode()
+    {
+        ViolationWindowDetector detector = new ViolationWindowDetector(2);
+
+        assertFalse(add(detector, 1, 0, 2));
+        assertTrue(add(detector, 1, 10, 2));
+        // The pair (0, 10) holds until WINDOW; the pair (10, WINDOW) takes over right on time.
+        assertFalse(add(detector, 1, WINDOW, 2));
+        // (10, WINDOW) holds until WINDOW + 10, so WINDOW + 11 is a new episode, even though (WINDOW, WINDOW + 11) holds.
+        assertTrue(add(detector, 1, WINDOW + 11, 2));
+        assertEquals(WINDOW, detector.alertTimestamp(0));
+    }
+
+    public void testMatchesSlidingWindowScan()
+    {
+        Random random = new Random(3);
+        for (int round = 0; round < 2_000; round++) {
+            int count = 1 + random.nextInt(5);
+            long[] timestamps = new long[random.nextInt(40)];
+            long time = 0;
+            for (int i = 0; i < timestamps.length; i++) {
+                // Mostly gaps around the window length, with some duplicates.
+                time += random.nextInt(4) == 0 ? 0 : random.nextInt((int) WINDOW / count * 2);
+                timestamps[i] = time;
+            }
+
+            // Rings sized for a bigger count than this rule uses, like when another rule needs more.
+            ViolationWindowDetector detector = new ViolationWindowDetector(5);
+            List<Long> episodes = new ArrayList<>();
+            for (long timestamp : timestamps) {
+                if (add(detector, 42, timestamp, count)) {
+                    episodes.add(detector.alertTimestamp(0));
+                }
+            }
+            assertEquals(Arrays.toString(timestamps), scan(timestamps, count), episodes);
+        }
+    }
+
+    public void testResolvedEpisodeKeepsStartEndAndPeak()
+    {
+        ViolationWindowDetector detector = new ViolationWindowDetector(3);
+        AlertRule below = rule(3);
+        below.direction = AlertRule.Direction.BELOW;
+        int index = detector.index(7);
+
+        assertFalse(detector.add(index, 0, 7.8, below));
+        assertFalse(detector.add(index, 60_000, 7.5, below));
+        assertTrue(detector.add(index, 120_000, 7.9, below));
+        assertEquals(7.5, detector.peak(index), 0.0);
+        assertFalse(detector.add(index, 200_000, 7.1, below));
+        assertEquals(7.1, detector.peak(index), 0.0);
+        // The last three started at 60s, so the rule holds until 360s.
+        assertEquals(360_000, detector.episodeEnd(index));
+        assertFalse(detector.endedBefore(index, 360_000));
+        assertTrue(detector.endedBefore(index, 360_001));
+
+        detector.close(index);
+        assertFalse(detector.endedBefore(index, Long.MAX_VALUE));
+        assertEquals(0, detector.alertTimestamp(index));
+        assertEquals(7.1, detector.peak(index), 0.0);
+    }
+
+    /**
+     * Checks the rule at every moment it can change, by counting the violations in the window from scratch.
+     * It can only start holding when a violation arrives, and only stop holding half a millisecond after
+     * some violation leaves the window. Times are doubled so those half milliseconds are whole numbers
+     * (odd ones, so they never fall on an arrival). Violations with the same timestamp arrive one by one.
+     */
+    private static List<Long> scan(long[] timestamps, int count)
+    {
+        // Each moment is {doubled time, how many violations have arrived by then}.
+        List<long[]> moments = new ArrayList<>();
+        for (int i = 0; i < timestamps.length; i++) {
+            moments.add(new long[] {2 * timestamps[i], i + 1});
+            moments.add(new long[] {2 * (timestamps[i] + WINDOW) + 1, -1});
+        }
+        moments.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        List<Long> episodes = new ArrayList<>();
+        boolean held = false;
+        for (long[] moment : moments) {
+            List<Long> inWindow = new ArrayList<>();
+            for (int i = 0; i < timestamps.length; i++) {
+                boolean arrived = moment[1] < 0 ? 2 * timestamps[i] <= moment[0] : i < moment[1];
+                if (arrived && 2 * (timestamps[i] + WINDOW) >= moment[0]) {
+                    inWindow.add(timestamps[i]);
+                }
+            }
+            boolean holds = inWindow.size() >= count;
+            if (holds && !held) {
+                // The first violation of the window is the count-th newest one.
+                episodes.add(inWindow.get(inWindow.size() - count));
+            }
+            held = holds;
+        }
+        return episodes;
+    }
+
+    private static boolean add(ViolationWindowDetector detector, long key, long timestamp, int count)
+    {
+        return detector.add(detector.index(key), timestamp, 0, rule(count));
+    }
+
+    private static AlertRule rule(int count)
+    {
+        AlertRule rule = new AlertRule();
+        rule.component = "TEST";
+        rule.limit = AlertRule.Limit.RED_HIGH;
+        rule.direction = AlertRule.Direction.ABOVE;
+        rule.count = count;
+        rule.windowMillis = WINDOW;
+        return rule;
+    }
+}
@@ -0,0 +1,99 @@
+package com.andrew;
+
+import junit.framework.TestCase;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * Checks the rolling stats against recomputing them from every reading in the window.
+ */
+public class WindowStatsTest extends TestCase
+{
+    private static final long WINDOW = 5 * 60_000L;
+
+    public void testWindowEdgeIsInclusive()
+    {
+        WindowStats stats = new WindowStats(WINDOW);
+        stats.add(0, 7.8);
+        stats.add(60_000, 7.7);
+        stats.add(WINDOW, 7.9);
+        assertEquals(3, stats.count());
+        assertEquals(7.7, stats.min(), 0.0);
+        assertEquals(7.9, stats.max(), 0.0);
+        assertEquals(7.8, stats.mean(), 1e-12);
+
+        // One millisecond later the first reading is gone.
+        stats.add(WINDOW + 1, 8.1);
+        assertEquals(3, stats.count());
+        assertEquals(8.1, stats.max(), 0.0);
+        assertEquals(7.9, stats.mean(), 1e-12);
+    }
+
+    public void testTimeToLimitFollowsTheSmoothedRate()
+    {
+        WindowStats stats = new WindowStats(WINDOW);
+        // A thermostat climbing 1 degree every 10 seconds for ten minutes, from 20 to 80, with limits 101, 98, 25 and 20.
+        for (int i = 0; i <= 60; i++) {
+            stats.add(i * 10_000L, 20 + i, 101, 98, 25, 20);
+        }
+        assertEquals(0.1, stats.ewmaSlope(), 1e-4);
+        // The EWMA lags a steady climb by about its time constant, a bit less with readings 10 seconds apart.
+        assertEquals(80 - 5.5, stats.ewma(), 0.1);
+        assertEquals(Math.round((98 - stats.ewma()) / stats.ewmaSlope() * 1000), stats.millisUntil(98, true));
+        assertEquals(Math.round((101 - stats.ewma()) / stats.ewmaSlope() * 1000), stats.millisUntil(101, true));
+        // Not heading for the low limits, and past a limit is no time at all.
+        assertEquals(-1, stats.millisUntil(25, false));
+        assertEquals(0, stats.millisUntil(40, true));
+
+        WindowStats.Summary summary = stats.summary();
+        assertEquals(Duration.ofMillis(stats.millisUntil(98, true)).toString(), summary.getTimeToYellow());
+        assertTrue(summary.getTimeToRed().startsWith("PT4M"));
+
+        // Falling back down, it's the low limits that count.
+        for (int i = 61; i <= 200; i++) {
+            stats.add(i * 10_000L, 80 - (i - 60), 101, 98, 25, 20);
+        }
+        assertTrue(stats.ewmaSlope() < 0);
+        assertEquals("PT0S", stats.summary().getTimeToRed());
+    }
+
+    public void testMatchesRecomputingTheWindow()
+    {
+        Random random = new Random(17);
+        int n = 20_000;
+        long[] timestamps = new long[n];
+        double[] values = new double[n];
+        WindowStats stats = new WindowStats(WINDOW);
+        long time = 1_514_847_600_000L;
+        for (int i = 0; i < n; i++) {
+            // Bursts and gaps, so the window grows, shrinks and sometimes empties out, and some duplicates.
+            time += random.nextInt(8) == 0 ? 0 : random.nextInt(random.nextInt(10) == 0 ? 400_000 : 20_000);
+            timestamps[i] = time;
+            values[i] = 80 + random.nextGaussian() * 10;
+            stats.add(time, values[i]);
+
+            int count = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            double sum = 0;
+            for (int j = i; j >= 0 && timestamps[j] >= time - WINDOW; j--) {
+                count++;
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+                sum += values[j];
+            }
+            double mean = sum / count;
+            double squares = 0;
+            for (int j = i; j > i - count; j--) {
+                squares += (values[j] - mean) * (values[j] - mean);
+            }
+
+            assertEquals(count, stats.count());
+            assertEquals(min, stats.min(), 0.0);
+            assertEquals(max, stats.max(), 0.0);
+            assertEquals(mean, stats.mean(), 1e-9);
+            assertEquals(Math.sqrt(squares / count), stats.standardDeviation(), 1e-6);
+        }
+    }
+}